@@ -3,13 +3,55 @@
  */
 package com.krisleonard.newrelic.project;
 
+import com.krisleonard.newrelic.project.ingest.IngestPipeline;
+import com.krisleonard.newrelic.project.ingest.WaitStrategy;
+import com.krisleonard.newrelic.project.jfr.JfrRecording;
+import com.krisleonard.newrelic.project.replication.ReplicationFollower;
+import com.krisleonard.newrelic.project.replication.ReplicationLeader;
+import com.krisleonard.newrelic.project.router.Backend;
+import com.krisleonard.newrelic.project.router.ShardStrategy;
+import com.krisleonard.newrelic.project.server.AdminServer;
 import com.krisleonard.newrelic.project.server.SocketServer;
+import com.krisleonard.newrelic.project.service.NumbersService;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceAsyncImpl;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRAFImpl;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRouterImpl;
+
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The New Relic coding project app
  */
 public class App {
 
+    /**
+     * The app mode that stores numbers in the numbers log
+     */
+    private static final String SERVER_MODE = "server";
+
+    /**
+     * The app mode that forwards numbers to backend servers
+     */
+    private static final String ROUTER_MODE = "router";
+
+    /**
+     * The app mode that follows a replication leader and takes over serving clients when the leader is lost
+     */
+    private static final String FOLLOWER_MODE = "follower";
+
+    /**
+     * The app mode. Either server, to store numbers in the numbers log, router, to forward numbers to the
+     * router backends, or follower, to replicate a leader's numbers log until taking over from it. Defaults to server
+     */
+    private static final String APP_MODE = System.getProperty("app.mode", SERVER_MODE);
+
     /**
      * The client connection working queue size. Defaults to 200
      */
@@ -29,17 +71,270 @@ public class App {
     private static final int CLIENT_CONNECTION_PORT = Integer.parseInt(
             System.getProperty("client.connection.port", Integer.toString( 4000)));
 
+    /**
+     * The local admin port for querying the stats history. A negative port disables the admin server. Defaults
+     * to 4001
+     */
+    private static final int ADMIN_PORT = Integer.parseInt(
+            System.getProperty("admin.port", Integer.toString(4001)));
+
+    /**
+     * The maximum count of lines a client connection is served per turn. Defaults to 1000
+     */
+    private static final int CLIENT_CONNECTION_QUANTUM_LINES = Integer.parseInt(
+            System.getProperty("client.connection.quantum.lines",
+                    Integer.toString(SocketServer.DEFAULT_CONNECTION_QUANTUM_LINES)));
+
+    /**
+     * The time in milliseconds a client connection waits for data before giving up its turn. Defaults to 5
+     */
+    private static final int CLIENT_CONNECTION_IDLE_TIMEOUT = Integer.parseInt(
+            System.getProperty("client.connection.idle.timeout.ms",
+                    Integer.toString(SocketServer.DEFAULT_CONNECTION_IDLE_TIMEOUT)));
+
+    /**
+     * The numbers log file. Defaults to numbers.log in the working directory
+     */
+    private static final Path NUMBERS_LOG_FILE = Paths.get(
+            System.getProperty("numbers.log.file", NumbersService.NUMBERS_LOG_FILE_NAME));
+
+    /**
+     * If an existing numbers log file should be kept, and its unique total recounted, instead of being deleted.
+     * Always true in follower mode. Defaults to false
+     */
+    private static final boolean NUMBERS_LOG_PRESERVE = Boolean.parseBoolean(
+            System.getProperty("numbers.log.preserve", Boolean.toString(false)));
+
+    /**
+     * The port a replication follower connects to. A negative port disables replication. Defaults to -1
+     */
+    private static final int REPLICATION_PORT = Integer.parseInt(
+            System.getProperty("replication.port", Integer.toString(-1)));
+
+    /**
+     * The interval in milliseconds a replication leader sends heartbeats to its follower at. Defaults to 1000
+     */
+    private static final long REPLICATION_HEARTBEAT_INTERVAL = Long.parseLong(
+            System.getProperty("replication.heartbeat.interval.ms",
+                    Long.toString(ReplicationLeader.DEFAULT_HEARTBEAT_INTERVAL)));
+
+    /**
+     * How long in milliseconds a follower waits for a frame from the leader before treating the connection as lost.
+     * Should be a few heartbeat intervals. Defaults to 3000
+     */
+    private static final int REPLICATION_LEADER_TIMEOUT = Integer.parseInt(
+            System.getProperty("replication.leader.timeout.ms",
+                    Integer.toString(ReplicationFollower.DEFAULT_LEADER_TIMEOUT)));
+
+    /**
+     * The replication leader a follower follows, as host:port. Defaults to localhost:4002
+     */
+    private static final String REPLICATION_LEADER = System.getProperty("replication.leader", "localhost:4002");
+
+    /**
+     * How long in milliseconds a follower waits for a lost leader to come back before taking over. Defaults to 5000
+     */
+    private static final long REPLICATION_TAKEOVER_TIMEOUT = Long.parseLong(
+            System.getProperty("replication.takeover.timeout.ms", Long.toString(5000)));
+
+    /**
+     * The comma separated router backends, each as host:port:adminPort. Defaults to no backends
+     */
+    private static final String ROUTER_BACKENDS = System.getProperty("router.backends", "");
+
+    /**
+     * How the router picks the backend for a number. Either RANGE or HASH. Defaults to RANGE
+     */
+    private static final ShardStrategy ROUTER_SHARD_STRATEGY = ShardStrategy.valueOf(
+            System.getProperty("router.shard.strategy", ShardStrategy.RANGE.name()));
+
+    /**
+     * The number of pipelined connections from the router to each backend. Defaults to two
+     */
+    private static final int ROUTER_BACKEND_CONNECTIONS = Integer.parseInt(
+            System.getProperty("router.backend.connections", Integer.toString(2)));
+
+    /**
+     * If the numbers service should use asynchronous file IO. Defaults to false
+     */
+    private static final boolean NUMBERS_SERVICE_ASYNC = Boolean.parseBoolean(
+            System.getProperty("numbers.service.async", Boolean.toString(false)));
+
+    /**
+     * If client workers should publish numbers to a single writer ingest pipeline. Defaults to false
+     */
+    private static final boolean INGEST_PIPELINE_ENABLED = Boolean.parseBoolean(
+            System.getProperty("ingest.pipeline.enabled", Boolean.toString(false)));
+
+    /**
+     * The ingest pipeline ring buffer size. Must be a power of two. Defaults to 65536
+     */
+    private static final int INGEST_RING_BUFFER_SIZE = Integer.parseInt(
+            System.getProperty("ingest.ring.buffer.size", Integer.toString(65536)));
+
+    /**
+     * The maximum count of numbers the ingest pipeline consumer adds at once. Defaults to 1024
+     */
+    private static final int INGEST_BATCH_SIZE = Integer.parseInt(
+            System.getProperty("ingest.batch.size", Integer.toString(1024)));
+
+    /**
+     * The ingest pipeline wait strategy. One of BUSY_SPIN, YIELD or PARK. Defaults to PARK
+     */
+    private static final WaitStrategy INGEST_WAIT_STRATEGY = WaitStrategy.valueOf(
+            System.getProperty("ingest.wait.strategy", WaitStrategy.PARK.name()));
+
+    /**
+     * The file to write a JFR recording to, using the bundled project settings profile. Defaults to no recording
+     */
+    private static final String JFR_RECORDING_FILE = System.getProperty("jfr.recording.file");
+
     public static void main(String[] args) {
+        // The router keeps no numbers log to replicate
+        if (ROUTER_MODE.equals(APP_MODE) && REPLICATION_PORT >= 0) {
+            System.out.println("Replication is not supported in router mode, remove replication.port");
+            return;
+        }
+
+        // Start the JFR recording if requested
+        Recording recording = null;
+        if (JFR_RECORDING_FILE != null) {
+            try {
+                recording = JfrRecording.start(Paths.get(JFR_RECORDING_FILE));
+            } catch (IOException | ParseException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        final Recording jfrRecording = recording;
+
+        // Create the numbers service
+        NumbersService numbersService;
+        try {
+            numbersService = createNumbersService();
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // In follower mode replicate the leader until it is lost, then take over with the replicated numbers log
+        if (FOLLOWER_MODE.equals(APP_MODE) && !followLeader(numbersService)) {
+            return;
+        }
+
+        // Start replicating to a follower if enabled
+        ReplicationLeader replicationLeader = null;
+        if (REPLICATION_PORT >= 0) {
+            replicationLeader =
+                    new ReplicationLeader(numbersService, NUMBERS_LOG_FILE, REPLICATION_HEARTBEAT_INTERVAL);
+            try {
+                replicationLeader.start(REPLICATION_PORT);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        final ReplicationLeader startedReplicationLeader = replicationLeader;
+
+        // Create the ingest pipeline if enabled
+        IngestPipeline ingestPipeline = INGEST_PIPELINE_ENABLED
+                ? new IngestPipeline(numbersService, INGEST_RING_BUFFER_SIZE, INGEST_BATCH_SIZE, INGEST_WAIT_STRATEGY)
+                : null;
+
         // Create the server
-        SocketServer socketServer = new SocketServer();
+        SocketServer socketServer = new SocketServer(numbersService, ingestPipeline);
+
+        // Start the admin server
+        AdminServer adminServer = null;
+        if (ADMIN_PORT >= 0) {
+            adminServer = new AdminServer(socketServer.getStatsHistory());
+            try {
+                adminServer.start(ADMIN_PORT);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        final AdminServer startedAdminServer = adminServer;
 
         // Set a shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             socketServer.shutdown();
+            if (startedAdminServer != null) {
+                startedAdminServer.shutdown();
+            }
+            if (startedReplicationLeader != null) {
+                startedReplicationLeader.close();
+            }
+
+            // Stop the JFR recording so it is written to its file
+            if (jfrRecording != null) {
+                jfrRecording.stop();
+            }
         }));
 
         // Start the server
         socketServer.startServer(CLIENT_CONNECTION_PORT,
-                CLIENT_CONNECTION_POOL_SIZE, CLIENT_CONNECTION_WORK_QUEUE_SIZE);
+                CLIENT_CONNECTION_POOL_SIZE, CLIENT_CONNECTION_WORK_QUEUE_SIZE,
+                CLIENT_CONNECTION_QUANTUM_LINES, CLIENT_CONNECTION_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Follow the replication leader, applying its new unique numbers to the numbers service, until the leader is
+     * lost or the app is shut down
+     *
+     * @param numbersService The numbers service to apply the leader's numbers to
+     * @return True if the leader was lost and this app should take over. False if the app is shutting down.
+     */
+    private static boolean followLeader(NumbersService numbersService) {
+        String[] leader = REPLICATION_LEADER.split(":");
+        if (leader.length != 2) {
+            System.out.println("Invalid replication leader, expected host:port: " + REPLICATION_LEADER);
+            return false;
+        }
+
+        ReplicationFollower replicationFollower = new ReplicationFollower(numbersService, leader[0],
+                Integer.parseInt(leader[1]), REPLICATION_TAKEOVER_TIMEOUT, REPLICATION_LEADER_TIMEOUT);
+        Thread followerShutdownHook = new Thread(replicationFollower::close);
+        Runtime.getRuntime().addShutdownHook(followerShutdownHook);
+
+        if (!replicationFollower.follow()) {
+            return false;
+        }
+        Runtime.getRuntime().removeShutdownHook(followerShutdownHook);
+
+        // Replicated numbers aren't counted as received, so the status and totals only count client input
+        System.out.println("Replication leader lost, taking over with " + numbersService.getUniqueTotal()
+                + " unique numbers");
+        return true;
+    }
+
+    /**
+     * Create the numbers service for the app mode
+     *
+     * @return The numbers service
+     * @throws IOException When there is an IO issue with the numbers log file
+     * @throws IllegalArgumentException When the app mode or router backends are invalid
+     */
+    private static NumbersService createNumbersService() throws IOException, IllegalArgumentException {
+        switch (APP_MODE) {
+            case SERVER_MODE:
+            case FOLLOWER_MODE:
+                // A follower always keeps its numbers log, so a restarted follower doesn't lose its warm state
+                boolean preserveNumbersLog = NUMBERS_LOG_PRESERVE || FOLLOWER_MODE.equals(APP_MODE);
+                return NUMBERS_SERVICE_ASYNC
+                        ? new NumbersServiceAsyncImpl(NUMBERS_LOG_FILE, preserveNumbersLog)
+                        : new NumbersServiceRAFImpl(NUMBERS_LOG_FILE, preserveNumbersLog);
+            case ROUTER_MODE:
+                List<Backend> backends = new ArrayList<>();
+                for (String backend : ROUTER_BACKENDS.split(",")) {
+                    if (!backend.trim().isEmpty()) {
+                        backends.add(Backend.parse(backend, ROUTER_BACKEND_CONNECTIONS));
+                    }
+                }
+                return new NumbersServiceRouterImpl(backends, ROUTER_SHARD_STRATEGY);
+            default:
+                throw new IllegalArgumentException("Unknown app mode: " + APP_MODE);
+        }
     }
 }
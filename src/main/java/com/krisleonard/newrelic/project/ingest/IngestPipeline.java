@@ -0,0 +1,144 @@
+package com.krisleonard.newrelic.project.ingest;
+
+import com.krisleonard.newrelic.project.service.NumbersService;
+
+import java.io.IOException;
+
+/**
+ * A single writer ingest pipeline. Client workers parse numbers and publish them in batches to a ring buffer.
+ * One dedicated consumer thread drains the ring buffer in batches and is the only thread that adds numbers to the
+ * numbers service, so client workers never contend on the numbers service.
+ */
+public class IngestPipeline {
+
+    /**
+     * The name of the consumer thread
+     */
+    private static final String CONSUMER_THREAD_NAME = "NewRelic Project Ingest Consumer";
+
+    /**
+     * The ring buffer between the client workers and the consumer thread
+     */
+    private final IngestRingBuffer ringBuffer;
+
+    /**
+     * The numbers service owned by the consumer thread
+     */
+    private final NumbersService numbersService;
+
+    /**
+     * The maximum count of numbers the consumer drains and adds at once
+     */
+    private final int batchSize;
+
+    /**
+     * The strategy the consumer uses to wait for numbers
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Indicator of if the consumer should keep running
+     */
+    private volatile boolean running = false;
+
+    /**
+     * The consumer thread
+     */
+    private Thread consumerThread = null;
+
+    /**
+     * Create an ingest pipeline.
+     *
+     * @param numbersService The numbers service to add drained numbers to
+     * @param ringBufferSize The ring buffer capacity. Must be a power of two.
+     * @param batchSize The maximum count of numbers the consumer drains and adds at once
+     * @param waitStrategy The strategy producers and the consumer use to wait on the ring buffer
+     */
+    public IngestPipeline(final NumbersService numbersService, final int ringBufferSize, final int batchSize,
+                          final WaitStrategy waitStrategy) {
+        this.numbersService = numbersService;
+        this.ringBuffer = new IngestRingBuffer(ringBufferSize, waitStrategy);
+        this.batchSize = batchSize;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Start the consumer thread.
+     *
+     * @param ioErrorHandler Called on the consumer thread if the numbers service has an IO issue or fails
+     *                       unexpectedly. The pipeline is halted before it is called.
+     */
+    public void start(final Runnable ioErrorHandler) {
+        running = true;
+        consumerThread = new Thread(() -> consume(ioErrorHandler), CONSUMER_THREAD_NAME);
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+    }
+
+    /**
+     * Publish a batch of parsed numbers to the consumer, waiting if the ring buffer is full.
+     *
+     * @param numbers The array holding the numbers to publish
+     * @param count The count of numbers to publish from the start of the array
+     * @return True if the numbers were published. False if the pipeline has been halted.
+     */
+    public boolean publish(final int[] numbers, final int count) {
+        return ringBuffer.publish(numbers, count);
+    }
+
+    /**
+     * Get the count of numbers waiting for the consumer
+     *
+     * @return The count of numbers waiting in the ring buffer
+     */
+    public long getBacklog() {
+        return ringBuffer.size();
+    }
+
+    /**
+     * Stop the consumer thread once it has drained all published numbers, then halt the ring buffer.
+     */
+    public void stop() {
+        running = false;
+        if (consumerThread != null && consumerThread != Thread.currentThread()) {
+            try {
+                consumerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ringBuffer.halt();
+    }
+
+    /**
+     * The consumer loop. Drains batches from the ring buffer into the numbers service until stopped and empty.
+     *
+     * @param ioErrorHandler Called if the numbers service has an IO issue or fails unexpectedly
+     */
+    private void consume(final Runnable ioErrorHandler) {
+        int[] batch = new int[batchSize];
+        int idleCount = 0;
+        try {
+            while (true) {
+                int count = ringBuffer.drain(batch, batchSize);
+                if (count > 0) {
+                    numbersService.addNumbers(batch, count);
+                    idleCount = 0;
+                } else if (!running) {
+                    break;
+                } else {
+                    waitStrategy.idle(idleCount);
+                    idleCount = Math.min(idleCount + 1, WaitStrategy.MAX_IDLE_COUNT);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // If the numbers can't be added stop accepting numbers and terminate the server, so client workers
+            // never wait on a ring buffer nothing drains
+            System.out.println("Error while adding numbers. Shutting down server");
+            ex.printStackTrace();
+            running = false;
+            ringBuffer.halt();
+            ioErrorHandler.run();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.krisleonard.newrelic.project.ingest;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated, multi-producer, single-consumer ring buffer of ints. Producers claim a range of sequences with a
+ * single compare and set, fill the slots and then mark each slot as published. The single consumer drains
+ * contiguous published slots in batches. No locks are taken by producers or the consumer.
+ */
+public class IngestRingBuffer {
+
+    /**
+     * The ring buffer slots
+     */
+    private final int[] entries;
+
+    /**
+     * The mask for converting a sequence to a slot index
+     */
+    private final int indexMask;
+
+    /**
+     * The shift for converting a sequence to the number of times the ring has wrapped
+     */
+    private final int indexShift;
+
+    /**
+     * The wrap count each slot was last published for. A slot is readable for a sequence when its value matches
+     * the sequence's wrap count.
+     */
+    private final AtomicIntegerArray publishedRounds;
+
+    /**
+     * The highest sequence claimed by a producer
+     */
+    private final AtomicLong claimedSequence = new AtomicLong(-1);
+
+    /**
+     * The highest sequence drained by the consumer. Only written by the consumer thread.
+     */
+    private final AtomicLong consumedSequence = new AtomicLong(-1);
+
+    /**
+     * The strategy producers use to wait for free slots
+     */
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * Indicator of if the ring buffer is halted and no longer accepting numbers
+     */
+    private volatile boolean halted = false;
+
+    /**
+     * Create a ring buffer.
+     *
+     * @param capacity The number of slots. Must be a power of two.
+     * @param waitStrategy The strategy producers use to wait for free slots
+     */
+    public IngestRingBuffer(final int capacity, final WaitStrategy waitStrategy) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two: " + capacity);
+        }
+
+        this.entries = new int[capacity];
+        this.indexMask = capacity - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(capacity);
+        this.publishedRounds = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            publishedRounds.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Publish a batch of numbers, waiting for free slots if the ring buffer is full. Batches larger than the
+     * ring buffer are published in ring buffer sized chunks.
+     *
+     * @param numbers The array holding the numbers to publish
+     * @param count The count of numbers to publish from the start of the array
+     * @return True if the numbers were published. False if the ring buffer has been halted.
+     */
+    public boolean publish(final int[] numbers, final int count) {
+        int offset = 0;
+        while (offset < count) {
+            int chunkSize = Math.min(count - offset, entries.length);
+            long highSequence = claim(chunkSize, true);
+            if (highSequence < 0) {
+                return false;
+            }
+
+            // Fill the claimed slots then mark them published. The published round is written after the slot
+            // so the consumer sees the slot value once it sees the round.
+            for (long sequence = highSequence - chunkSize + 1; sequence <= highSequence; sequence++) {
+                int index = (int) sequence & indexMask;
+                entries[index] = numbers[offset++];
+                publishedRounds.lazySet(index, (int) (sequence >>> indexShift));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publish a single number, waiting for a free slot if the ring buffer is full.
+     *
+     * @param number The number to publish
+     * @return True if the number was published. False if the ring buffer has been halted.
+     */
+    public boolean publish(final int number) {
+        return publish(number, true);
+    }
+
+    /**
+     * Publish a single number if there is a free slot. Never waits for the consumer.
+     *
+     * @param number The number to publish
+     * @return True if the number was published. False if the ring buffer is full or has been halted.
+     */
+    public boolean tryPublish(final int number) {
+        return publish(number, false);
+    }
+
+    /**
+     * Publish a single number
+     *
+     * @param number The number to publish
+     * @param wait If the producer should wait for a free slot when the ring buffer is full
+     * @return True if the number was published
+     */
+    private boolean publish(final int number, final boolean wait) {
+        long sequence = claim(1, wait);
+        if (sequence < 0) {
+            return false;
+        }
+
+        int index = (int) sequence & indexMask;
+        entries[index] = number;
+        publishedRounds.lazySet(index, (int) (sequence >>> indexShift));
+        return true;
+    }
+
+    /**
+     * Claim the next count sequences, waiting until the consumer has freed enough slots if requested.
+     *
+     * @param count The count of sequences to claim
+     * @param wait If the producer should wait when there aren't enough free slots
+     * @return The highest claimed sequence, or -1 if the ring buffer has been halted or is full and wait is false
+     */
+    private long claim(final int count, final boolean wait) {
+        int idleCount = 0;
+        while (!halted) {
+            long current = claimedSequence.get();
+            long next = current + count;
+
+            // Wait while the claim would overwrite slots the consumer hasn't drained yet
+            if (next - entries.length > consumedSequence.get()) {
+                if (!wait) {
+                    return -1;
+                }
+                waitStrategy.idle(idleCount);
+                idleCount = Math.min(idleCount + 1, WaitStrategy.MAX_IDLE_COUNT);
+            } else if (claimedSequence.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Drain up to max published numbers in sequence order. Must only be called by the single consumer thread.
+     *
+     * @param numbers The array to drain numbers into
+     * @param max The maximum count of numbers to drain
+     * @return The count of numbers drained
+     */
+    public int drain(final int[] numbers, final int max) {
+        long nextSequence = consumedSequence.get() + 1;
+        int count = 0;
+        while (count < max) {
+            long sequence = nextSequence + count;
+            int index = (int) sequence & indexMask;
+            if (publishedRounds.get(index) != (int) (sequence >>> indexShift)) {
+                break;
+            }
+            numbers[count++] = entries[index];
+        }
+
+        // Free the drained slots for producers
+        if (count > 0) {
+            consumedSequence.lazySet(nextSequence + count - 1);
+        }
+        return count;
+    }
+
+    /**
+     * Get the count of numbers published or being published that have not been drained yet
+     *
+     * @return The count of numbers waiting in the ring buffer
+     */
+    public long size() {
+        return claimedSequence.get() - consumedSequence.get();
+    }
+
+    /**
+     * Halt the ring buffer. Producers waiting for free slots, and any later publishes, give up.
+     */
+    public void halt() {
+        halted = true;
+    }
+}
@@ -0,0 +1,80 @@
+package com.krisleonard.newrelic.project.ingest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits when the ingest ring buffer has nothing to drain, or no free slots to publish into.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spin on the CPU. Lowest latency, but burns a core while idle.
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle(final int idleCount) {
+            Thread.onSpinWait();
+        }
+    },
+
+    /**
+     * Spin briefly then yield the CPU to other threads.
+     */
+    YIELD {
+        @Override
+        public void idle(final int idleCount) {
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    },
+
+    /**
+     * Spin briefly, then yield, then park for a short time. Uses the least CPU while idle.
+     */
+    PARK {
+        @Override
+        public void idle(final int idleCount) {
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (idleCount < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    };
+
+    /**
+     * The number of idle calls that spin before yielding
+     */
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * The number of idle calls that yield before parking
+     */
+    private static final int YIELD_TRIES = 100;
+
+    /**
+     * The idle count at which every strategy has reached its final way of waiting. Callers stop counting here so
+     * the idle count never overflows.
+     */
+    public static final int MAX_IDLE_COUNT = SPIN_TRIES + YIELD_TRIES;
+
+    /**
+     * The time to park for once spinning and yielding have not found work
+     */
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Wait once. Called repeatedly while there is no work, with the number of previous calls since work was
+     * last found.
+     *
+     * @param idleCount The number of times idle has been called since work was last found, capped at
+     *                  MAX_IDLE_COUNT
+     */
+    public abstract void idle(final int idleCount);
+}
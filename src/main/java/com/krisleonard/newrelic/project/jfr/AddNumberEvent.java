@@ -0,0 +1,32 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event covering the numbers service checking and recording one number while holding the numbers lock.
+ */
+@Name("com.krisleonard.newrelic.project.AddNumber")
+@Label("Add Number")
+@Description("Checking and recording one number while holding the numbers lock")
+@Category({"NewRelic Project", "Storage"})
+@StackTrace(false)
+@Threshold("10 ms")
+public class AddNumberEvent extends jdk.jfr.Event {
+
+    /**
+     * The number
+     */
+    @Label("Number")
+    public int number;
+
+    /**
+     * If the number was new and written to the numbers log rather than a duplicate
+     */
+    @Label("Unique")
+    public boolean unique;
+}
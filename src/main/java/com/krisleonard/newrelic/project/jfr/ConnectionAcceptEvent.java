@@ -0,0 +1,31 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering the server handing an accepted connection to the thread pool. Long events mean the work
+ * queue was full.
+ */
+@Name("com.krisleonard.newrelic.project.ConnectionAccept")
+@Label("Connection Accept")
+@Description("Handing an accepted connection to the client connection thread pool")
+@Category({"NewRelic Project", "Server"})
+@StackTrace(false)
+public class ConnectionAcceptEvent extends jdk.jfr.Event {
+
+    /**
+     * The connection id
+     */
+    @Label("Connection Id")
+    public long connectionId;
+
+    /**
+     * The remote address
+     */
+    @Label("Remote Address")
+    public String remoteAddress;
+}
@@ -0,0 +1,42 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event covering a client connection from when it is accepted until it is closed.
+ */
+@Name("com.krisleonard.newrelic.project.Connection")
+@Label("Connection")
+@Description("A client connection from accept to close")
+@Category({"NewRelic Project", "Server"})
+@StackTrace(false)
+public class ConnectionEvent extends jdk.jfr.Event {
+
+    /**
+     * The connection id
+     */
+    @Label("Connection Id")
+    public long connectionId;
+
+    /**
+     * The remote address
+     */
+    @Label("Remote Address")
+    public String remoteAddress;
+
+    /**
+     * The lines read
+     */
+    @Label("Lines Read")
+    public long linesRead;
+
+    /**
+     * Why the connection was closed
+     */
+    @Label("Close Reason")
+    public String closeReason;
+}
@@ -0,0 +1,26 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event covering a client connection waiting in the work queue for a pool thread.
+ */
+@Name("com.krisleonard.newrelic.project.ConnectionQueueWait")
+@Label("Connection Queue Wait")
+@Description("A client connection waiting in the work queue for its next turn")
+@Category({"NewRelic Project", "Server"})
+@StackTrace(false)
+@Threshold("10 ms")
+public class ConnectionQueueWaitEvent extends jdk.jfr.Event {
+
+    /**
+     * The connection id
+     */
+    @Label("Connection Id")
+    public long connectionId;
+}
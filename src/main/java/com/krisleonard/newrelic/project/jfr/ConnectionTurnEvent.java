@@ -0,0 +1,32 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event covering one turn of a client worker serving its socket.
+ */
+@Name("com.krisleonard.newrelic.project.ConnectionTurn")
+@Label("Connection Turn")
+@Description("A client worker serving up to its quantum of lines from a socket")
+@Category({"NewRelic Project", "Server"})
+@StackTrace(false)
+@Threshold("50 ms")
+public class ConnectionTurnEvent extends jdk.jfr.Event {
+
+    /**
+     * The connection id
+     */
+    @Label("Connection Id")
+    public long connectionId;
+
+    /**
+     * The lines read
+     */
+    @Label("Lines Read")
+    public long linesRead;
+}
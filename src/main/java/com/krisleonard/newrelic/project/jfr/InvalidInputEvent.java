@@ -0,0 +1,30 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a client connection being disconnected because of invalid input.
+ */
+@Name("com.krisleonard.newrelic.project.InvalidInput")
+@Label("Invalid Input")
+@Description("A client connection disconnected because of invalid input")
+@Category({"NewRelic Project", "Server"})
+@StackTrace(false)
+public class InvalidInputEvent extends jdk.jfr.Event {
+
+    /**
+     * The connection id
+     */
+    @Label("Connection Id")
+    public long connectionId;
+
+    /**
+     * The invalid line read from the socket
+     */
+    @Label("Input")
+    public String input;
+}
@@ -0,0 +1,71 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utility class for starting a JFR recording with the bundled NewRelic Project settings profile.
+ */
+public class JfrRecording {
+
+    /**
+     * The class path location of the bundled JFR settings profile
+     */
+    public static final String SETTINGS_RESOURCE = "/jfr/newrelic-project.jfc";
+
+    /**
+     * The name of the recording
+     */
+    private static final String RECORDING_NAME = "NewRelic Project";
+
+    /**
+     * Start a recording that uses the JDK default settings profile together with the bundled project settings
+     * profile. The recording is written to the destination when it is stopped.
+     *
+     * @param destination The file to write the recording to
+     * @return The started recording
+     * @throws IOException When the settings profiles can't be read or the destination can't be written
+     * @throws ParseException When a settings profile can't be parsed
+     */
+    public static Recording start(final Path destination) throws IOException, ParseException {
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        settings.putAll(loadProjectConfiguration().getSettings());
+
+        Recording recording = new Recording(settings);
+        recording.setName(RECORDING_NAME);
+        recording.setToDisk(true);
+        recording.setDestination(destination);
+        recording.start();
+
+        System.out.println("JFR recording to: " + destination.toAbsolutePath());
+        return recording;
+    }
+
+    /**
+     * Load the bundled project settings profile from the class path
+     *
+     * @return The project settings profile
+     * @throws IOException When the settings profile can't be read
+     * @throws ParseException When the settings profile can't be parsed
+     */
+    public static Configuration loadProjectConfiguration() throws IOException, ParseException {
+        InputStream settingsStream = JfrRecording.class.getResourceAsStream(SETTINGS_RESOURCE);
+        if (settingsStream == null) {
+            throw new IOException("Missing JFR settings profile: " + SETTINGS_RESOURCE);
+        }
+
+        try (Reader settingsReader = new InputStreamReader(settingsStream, StandardCharsets.UTF_8)) {
+            return Configuration.create(settingsReader);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event covering reading a number's line from the numbers log.
+ */
+@Name("com.krisleonard.newrelic.project.NumbersFileRead")
+@Label("Numbers File Read")
+@Description("Reading a number's line from the numbers log")
+@Category({"NewRelic Project", "Storage"})
+@StackTrace(false)
+@Threshold("10 ms")
+public class NumbersFileReadEvent extends jdk.jfr.Event {
+
+    /**
+     * The number
+     */
+    @Label("Number")
+    public int number;
+}
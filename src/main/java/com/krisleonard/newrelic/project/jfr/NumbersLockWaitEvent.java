@@ -0,0 +1,26 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event covering a thread waiting for the numbers lock.
+ */
+@Name("com.krisleonard.newrelic.project.NumbersLockWait")
+@Label("Numbers Lock Wait")
+@Description("Waiting to acquire the numbers service lock")
+@Category({"NewRelic Project", "Storage"})
+@StackTrace(false)
+@Threshold("10 ms")
+public class NumbersLockWaitEvent extends jdk.jfr.Event {
+
+    /**
+     * The count of numbers the lock is being acquired for
+     */
+    @Label("Batch Size")
+    public int batchSize;
+}
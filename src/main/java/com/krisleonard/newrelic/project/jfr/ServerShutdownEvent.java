@@ -0,0 +1,16 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering the socket server shutting down.
+ */
+@Name("com.krisleonard.newrelic.project.ServerShutdown")
+@Label("Server Shutdown")
+@Description("The socket server shutting down its thread pools and server socket")
+@Category({"NewRelic Project", "Server"})
+public class ServerShutdownEvent extends jdk.jfr.Event {
+}
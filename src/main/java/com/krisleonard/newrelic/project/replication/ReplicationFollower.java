@@ -0,0 +1,258 @@
+package com.krisleonard.newrelic.project.replication;
+
+import com.krisleonard.newrelic.project.service.NumbersService;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The follower side of replication from a leader. Applies the leader's stream of new unique numbers to the
+ * follower's own numbers service, so the follower's numbers log stays warm, and acknowledges each batch once it
+ * has been applied. If the leader is lost and can't be reconnected to within the takeover timeout the follower
+ * stops following so the caller can take over serving clients.
+ */
+public class ReplicationFollower implements Closeable {
+
+    /**
+     * How long to wait to connect to the leader in milliseconds
+     */
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    /**
+     * The default time to wait for a frame from the leader before treating it as lost, in milliseconds
+     */
+    public static final int DEFAULT_LEADER_TIMEOUT = (int) (3 * ReplicationLeader.DEFAULT_HEARTBEAT_INTERVAL);
+
+    /**
+     * The delay before reconnecting to the leader in milliseconds
+     */
+    private static final long RECONNECT_DELAY = 500;
+
+    /**
+     * The status timer delay in seconds
+     */
+    private static final int STATUS_TIMER_DELAY = 10;
+
+    /**
+     * The numbers service the leader's numbers are applied to
+     */
+    private final NumbersService numbersService;
+
+    /**
+     * The leader host
+     */
+    private final String leaderHost;
+
+    /**
+     * The leader replication port
+     */
+    private final int leaderPort;
+
+    /**
+     * How long the leader can be unreachable before the follower stops following, in milliseconds
+     */
+    private final long takeoverTimeout;
+
+    /**
+     * How long to wait for a frame from the leader before treating it as lost, in milliseconds
+     */
+    private final int leaderTimeout;
+
+    /**
+     * The count of numbers applied from the leader
+     */
+    private volatile long appliedCount = 0;
+
+    /**
+     * The leader's unique total from its last heartbeat
+     */
+    private volatile int leaderUniqueTotal = 0;
+
+    /**
+     * The time the last frame was received from the leader in milliseconds, or zero if the leader has never been
+     * heard from. Only used by the following thread.
+     */
+    private long lastFrameMillis = 0;
+
+    /**
+     * Indicator of if the follower is connected to the leader
+     */
+    private volatile boolean connected = false;
+
+    /**
+     * The leader socket
+     */
+    private volatile Socket socket = null;
+
+    /**
+     * Indicator of if the follower has been closed
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Create a replication follower with the default leader timeout.
+     *
+     * @param numbersService The numbers service to apply the leader's numbers to
+     * @param leaderHost The leader host
+     * @param leaderPort The leader replication port
+     * @param takeoverTimeout How long the leader can be unreachable before the follower stops following, in
+     *                        milliseconds
+     */
+    public ReplicationFollower(final NumbersService numbersService, final String leaderHost, final int leaderPort,
+                               final long takeoverTimeout) {
+        this(numbersService, leaderHost, leaderPort, takeoverTimeout, DEFAULT_LEADER_TIMEOUT);
+    }
+
+    /**
+     * Create a replication follower.
+     *
+     * @param numbersService The numbers service to apply the leader's numbers to
+     * @param leaderHost The leader host
+     * @param leaderPort The leader replication port
+     * @param takeoverTimeout How long the leader can be unreachable before the follower stops following, in
+     *                        milliseconds
+     * @param leaderTimeout How long to wait for a frame from the leader before treating it as lost, in
+     *                      milliseconds. Must be a few of the leader's heartbeat intervals.
+     */
+    public ReplicationFollower(final NumbersService numbersService, final String leaderHost, final int leaderPort,
+                               final long takeoverTimeout, final int leaderTimeout) {
+        this.numbersService = numbersService;
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+        this.takeoverTimeout = takeoverTimeout;
+        this.leaderTimeout = leaderTimeout;
+    }
+
+    /**
+     * Follow the leader, reconnecting when the connection is lost. Waits for as long as it takes to hear from the
+     * leader the first time, but once the leader has been followed it is only given the takeover timeout since its
+     * last frame to come back. Reconnecting to a leader that then sends nothing doesn't restart the timeout.
+     *
+     * @return True if the leader was lost and the caller should take over. False if the follower was closed.
+     */
+    public boolean follow() {
+        ScheduledExecutorService statusTimerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "NewRelic Project Replication Status");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statusTimerExecutor.scheduleAtFixedRate(() -> System.out.println(getStatus()),
+                STATUS_TIMER_DELAY, STATUS_TIMER_DELAY, TimeUnit.SECONDS);
+
+        try {
+            while (!stopped) {
+                try (Socket leaderSocket = new Socket()) {
+                    socket = leaderSocket;
+                    leaderSocket.connect(new InetSocketAddress(leaderHost, leaderPort), CONNECT_TIMEOUT);
+                    leaderSocket.setSoTimeout(leaderTimeout);
+                    System.out.println("Following replication leader " + leaderHost + ":" + leaderPort);
+                    connected = true;
+                    applyFrames(leaderSocket);
+                } catch (IOException e) {
+                    if (connected && !stopped) {
+                        System.out.println("Replication leader " + leaderHost + ":" + leaderPort + " lost: "
+                                + e.getMessage());
+                    }
+                } finally {
+                    connected = false;
+                    socket = null;
+                }
+
+                // Once the leader has been followed, give up on it after the takeover timeout
+                if (lastFrameMillis > 0 && System.currentTimeMillis() - lastFrameMillis >= takeoverTimeout) {
+                    return !stopped;
+                }
+
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            statusTimerExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Apply frames from the leader until the connection fails
+     *
+     * @param leaderSocket The leader socket
+     * @throws IOException When there is an IO issue talking to the leader or applying numbers
+     */
+    private void applyFrames(final Socket leaderSocket) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(leaderSocket.getInputStream()));
+        DataOutputStream output = new DataOutputStream(leaderSocket.getOutputStream());
+        int[] batch = new int[0];
+
+        while (!stopped) {
+            byte frameType = input.readByte();
+            long lastSequence = input.readLong();
+            lastFrameMillis = System.currentTimeMillis();
+            if (frameType == ReplicationLeader.HEARTBEAT_FRAME) {
+                leaderUniqueTotal = input.readInt();
+            } else if (frameType == ReplicationLeader.BATCH_FRAME) {
+                int count = input.readInt();
+                if (batch.length < count) {
+                    batch = new int[count];
+                }
+                for (int i = 0; i < count; i++) {
+                    batch[i] = input.readInt();
+                }
+
+                // Apply the batch then acknowledge it. Numbers resent by a catch up aren't counted as duplicates.
+                numbersService.applyReplicated(batch, count);
+                appliedCount += count;
+                output.writeLong(lastSequence);
+                output.flush();
+            } else {
+                throw new IOException("Unknown replication frame type: " + frameType);
+            }
+        }
+    }
+
+    /**
+     * Get how many unique numbers the follower is behind the leader, as of the leader's last heartbeat
+     *
+     * @return The replication lag in numbers
+     */
+    public long getLagNumbers() {
+        return Math.max(0, leaderUniqueTotal - numbersService.getUniqueTotal());
+    }
+
+    /**
+     * Get the replication status string
+     *
+     * @return The replication status
+     */
+    public String getStatus() {
+        return String.format("Replication from %s:%d: %s, applied %d numbers, lag %d numbers",
+                leaderHost, leaderPort, connected ? "connected" : "disconnected", appliedCount, getLagNumbers());
+    }
+
+    /**
+     * Stop following the leader
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        Socket leaderSocket = socket;
+        if (leaderSocket != null) {
+            try {
+                leaderSocket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.krisleonard.newrelic.project.replication;
+
+import com.krisleonard.newrelic.project.ingest.IngestRingBuffer;
+import com.krisleonard.newrelic.project.ingest.WaitStrategy;
+import com.krisleonard.newrelic.project.service.NumbersService;
+import com.krisleonard.newrelic.project.service.UniqueNumberListener;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRAFImpl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The leader side of replication to a hot standby follower. The numbers service tells the leader about each new
+ * unique number, which is published to a ring buffer without ever waiting, so replication never slows down adding
+ * numbers. The leader's sender thread drains the ring buffer and streams the numbers to the follower as an ordered
+ * log of sequenced batch frames, and the follower acknowledges each batch once it has applied it.
+ * <p>
+ * Each time a follower connects it is first sent every number in the leader's numbers log, so a follower that
+ * starts empty or has missed numbers catches up. If the ring buffer ever overflows because the follower falls too
+ * far behind, the follower is caught up again from the lowest dropped number on. Numbers dropped while a catch up
+ * is running are only caught up again if the running catch up has already read past them. Heartbeats keep being
+ * sent while the numbers log is read, so a long catch up isn't mistaken for a lost leader.
+ * <p>
+ * Frames sent to the follower are:
+ * <pre>
+ * 'B' long lastSequence, int count, int[count] numbers    A batch of unique numbers
+ * 'H' long lastSequence, int leaderUniqueTotal            A heartbeat, sent at least once per heartbeat interval
+ * </pre>
+ * The follower answers each batch with the long lastSequence it has applied.
+ */
+public class ReplicationLeader implements UniqueNumberListener, Closeable {
+
+    /**
+     * The batch frame type
+     */
+    static final byte BATCH_FRAME = 'B';
+
+    /**
+     * The heartbeat frame type
+     */
+    static final byte HEARTBEAT_FRAME = 'H';
+
+    /**
+     * The default heartbeat interval in milliseconds
+     */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 1000;
+
+    /**
+     * The value of a number field that holds no number
+     */
+    private static final int NO_NUMBER = Integer.MAX_VALUE;
+
+    /**
+     * The ring buffer size
+     */
+    private static final int RING_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The maximum count of numbers sent in one batch frame
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * The size of the buffer for the follower connection streams
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * How long closing waits for a connected follower to acknowledge the numbers already sent, in milliseconds
+     */
+    private static final long CLOSE_DRAIN_TIMEOUT = 5000;
+
+    /**
+     * The status timer delay in seconds
+     */
+    private static final int STATUS_TIMER_DELAY = 10;
+
+    /**
+     * The numbers service being replicated
+     */
+    private final NumbersService numbersService;
+
+    /**
+     * The path of the numbers service's numbers log file, read to catch up followers
+     */
+    private final Path numbersLogPath;
+
+    /**
+     * The heartbeat interval in milliseconds
+     */
+    private final long heartbeatInterval;
+
+    /**
+     * The new unique numbers waiting to be sent to the follower
+     */
+    private final IngestRingBuffer ringBuffer = new IngestRingBuffer(RING_BUFFER_SIZE, WaitStrategy.PARK);
+
+    /**
+     * The lock guarding the dropped number bookkeeping shared by the numbers service and the sender thread. Only
+     * taken when the ring buffer is full and once per chunk of the numbers log read by a catch up.
+     */
+    private final Object droppedNumbersLock = new Object();
+
+    /**
+     * The lowest number dropped because the ring buffer was full, which the follower must be caught up from, or
+     * NO_NUMBER. Only changed while holding the dropped numbers lock.
+     */
+    private volatile int missedFrom = NO_NUMBER;
+
+    /**
+     * The number the running catch up is still to read the numbers log from, or NO_NUMBER when no catch up is
+     * running. A dropped number at or past it is sent by the running catch up. Guarded by the dropped numbers lock.
+     */
+    private int scanFrom = NO_NUMBER;
+
+    /**
+     * The highest number dropped at or past the running catch up's scan position, or -1. Guarded by the dropped
+     * numbers lock.
+     */
+    private int scanDroppedMax = -1;
+
+    /**
+     * The sequence of the last number sent to the current follower
+     */
+    private final AtomicLong sentSequence = new AtomicLong();
+
+    /**
+     * The sequence of the last number the current follower acknowledged applying
+     */
+    private volatile long ackedSequence = 0;
+
+    /**
+     * The time the current follower last acknowledged every number sent to it, in milliseconds
+     */
+    private volatile long caughtUpMillis = 0;
+
+    /**
+     * The time the last heartbeat was sent to the current follower, in milliseconds. Only used by the sender thread.
+     */
+    private long lastHeartbeatMillis = 0;
+
+    /**
+     * The address of the current follower, or null if there is no follower connected
+     */
+    private volatile String followerAddress = null;
+
+    /**
+     * The replication server socket
+     */
+    private ServerSocket serverSocket = null;
+
+    /**
+     * The current follower socket
+     */
+    private volatile Socket followerSocket = null;
+
+    /**
+     * The sender thread
+     */
+    private Thread senderThread = null;
+
+    /**
+     * The status timer executor
+     */
+    private ScheduledExecutorService statusTimerExecutor = null;
+
+    /**
+     * Indicator of if the leader is stopped
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Create a replication leader for a numbers service with the default heartbeat interval.
+     *
+     * @param numbersService The numbers service to replicate
+     * @param numbersLogPath The path of the numbers service's numbers log file
+     */
+    public ReplicationLeader(final NumbersService numbersService, final Path numbersLogPath) {
+        this(numbersService, numbersLogPath, DEFAULT_HEARTBEAT_INTERVAL);
+    }
+
+    /**
+     * Create a replication leader for a numbers service.
+     *
+     * @param numbersService The numbers service to replicate
+     * @param numbersLogPath The path of the numbers service's numbers log file
+     * @param heartbeatInterval The heartbeat interval in milliseconds. Must be well below the follower's leader
+     *                          timeout.
+     */
+    public ReplicationLeader(final NumbersService numbersService, final Path numbersLogPath,
+                             final long heartbeatInterval) {
+        this.numbersService = numbersService;
+        this.numbersLogPath = numbersLogPath;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Start listening for a follower on the input port and start replicating the numbers service's new unique
+     * numbers. Only one follower is served at a time.
+     *
+     * @param port The replication port
+     * @throws IOException When the replication port can't be bound
+     * @throws UnsupportedOperationException When the numbers service doesn't tell listeners about unique numbers
+     */
+    public void start(final int port) throws IOException {
+        // Listen for unique numbers first so nothing is bound if the numbers service can't be replicated
+        numbersService.setUniqueNumberListener(this);
+        try {
+            serverSocket = new ServerSocket(port);
+        } catch (IOException e) {
+            numbersService.setUniqueNumberListener(null);
+            throw e;
+        }
+
+        senderThread = new Thread(this::serveFollowers, "NewRelic Project Replication Sender");
+        senderThread.setDaemon(true);
+        senderThread.start();
+
+        statusTimerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "NewRelic Project Replication Status");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statusTimerExecutor.scheduleAtFixedRate(() -> System.out.println(getStatus()),
+                STATUS_TIMER_DELAY, STATUS_TIMER_DELAY, TimeUnit.SECONDS);
+
+        System.out.println("Replication leader listening on " + serverSocket.getLocalSocketAddress());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Never waits for the follower. If the ring buffer is full the number is dropped and the follower is caught up
+     * from the numbers log instead.
+     */
+    @Override
+    public void uniqueNumberAdded(final int number) {
+        if (!ringBuffer.tryPublish(number)) {
+            synchronized (droppedNumbersLock) {
+                if (number < scanFrom) {
+                    missedFrom = Math.min(missedFrom, number);
+                } else {
+                    scanDroppedMax = Math.max(scanDroppedMax, number);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accept and serve followers one at a time until stopped
+     */
+    private void serveFollowers() {
+        while (!stopped) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setTcpNoDelay(true);
+                followerSocket = socket;
+                followerAddress = socket.getRemoteSocketAddress().toString();
+                System.out.println("Replication follower connected: " + followerAddress);
+                serveFollower(socket);
+            } catch (IOException | UncheckedIOException e) {
+                if (!stopped) {
+                    System.out.println("Replication follower " + followerAddress + " lost: " + e.getMessage());
+                }
+            } finally {
+                followerSocket = null;
+                followerAddress = null;
+            }
+        }
+    }
+
+    /**
+     * Catch up a newly connected follower from the numbers log and then stream new unique numbers to it
+     *
+     * @param socket The follower socket
+     * @throws IOException When there is an IO issue talking to the follower or reading the numbers log
+     */
+    private void serveFollower(final Socket socket) throws IOException {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE));
+        sentSequence.set(0);
+        ackedSequence = 0;
+        caughtUpMillis = System.currentTimeMillis();
+        lastHeartbeatMillis = 0;
+        startAckReader(socket);
+
+        int[] batch = new int[BATCH_SIZE];
+        int idleCount = 0;
+
+        catchUp(output, batch, 0);
+        while (!stopped) {
+            if (missedFrom != NO_NUMBER) {
+                catchUp(output, batch, missedFrom);
+            }
+
+            int count = ringBuffer.drain(batch, BATCH_SIZE);
+            if (count > 0) {
+                writeBatch(output, batch, count);
+                idleCount = 0;
+            } else {
+                // Nothing more to batch so send what has been written
+                output.flush();
+                WaitStrategy.PARK.idle(idleCount);
+                idleCount = Math.min(idleCount + 1, WaitStrategy.MAX_IDLE_COUNT);
+            }
+
+            heartbeatIfDue(output);
+        }
+    }
+
+    /**
+     * Send the follower a heartbeat if the heartbeat interval has passed since the last one
+     *
+     * @param output The follower output stream
+     * @throws IOException When there is an IO issue talking to the follower
+     */
+    private void heartbeatIfDue(final DataOutputStream output) throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - lastHeartbeatMillis >= heartbeatInterval) {
+            output.writeByte(HEARTBEAT_FRAME);
+            output.writeLong(sentSequence.get());
+            output.writeInt(numbersService.getUniqueTotal());
+            output.flush();
+            lastHeartbeatMillis = now;
+        }
+    }
+
+    /**
+     * Send the follower every number in the numbers log from the first number on. Numbers waiting in the ring buffer
+     * are discarded first. Each was written to the numbers log before it was published, so the catch up starts from
+     * the lowest of them and sends them all. Each batch is flushed as soon as it is written, and heartbeats are sent
+     * between chunks of the numbers log, so the follower keeps hearing from the leader however long the read takes.
+     *
+     * @param output The follower output stream
+     * @param batch The batch buffer
+     * @param firstNumber The number to catch up from
+     * @throws IOException When there is an IO issue talking to the follower or reading the numbers log
+     */
+    private void catchUp(final DataOutputStream output, final int[] batch, final int firstNumber)
+            throws IOException {
+        int fromNumber = firstNumber;
+        int count;
+        while ((count = ringBuffer.drain(batch, BATCH_SIZE)) > 0) {
+            for (int i = 0; i < count; i++) {
+                fromNumber = Math.min(fromNumber, batch[i]);
+            }
+        }
+        synchronized (droppedNumbersLock) {
+            fromNumber = Math.min(fromNumber, missedFrom);
+            missedFrom = NO_NUMBER;
+            scanFrom = fromNumber;
+        }
+
+        System.out.println("Catching up replication follower " + followerAddress + " from number " + fromNumber
+                + " of the numbers log");
+        int[] batchCount = new int[1];
+        int scanEnd = fromNumber;
+        try {
+            scanEnd = NumbersServiceRAFImpl.readNumbersLog(numbersLogPath, fromNumber, number -> {
+                batch[batchCount[0]++] = number;
+                if (batchCount[0] == BATCH_SIZE) {
+                    try {
+                        writeBatch(output, batch, batchCount[0]);
+                        output.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    batchCount[0] = 0;
+                }
+            }, chunkEnd -> {
+                synchronized (droppedNumbersLock) {
+                    scanFrom = chunkEnd;
+                }
+                try {
+                    heartbeatIfDue(output);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writeBatch(output, batch, batchCount[0]);
+            output.flush();
+        } finally {
+            // Numbers dropped past the end of the numbers log were written after it was read
+            synchronized (droppedNumbersLock) {
+                if (scanDroppedMax >= scanEnd) {
+                    missedFrom = Math.min(missedFrom, scanEnd);
+                }
+                scanFrom = NO_NUMBER;
+                scanDroppedMax = -1;
+            }
+        }
+    }
+
+    /**
+     * Write a batch frame to the follower
+     *
+     * @param output The follower output stream
+     * @param batch The numbers
+     * @param count The count of numbers in the batch
+     * @throws IOException When there is an IO issue talking to the follower
+     */
+    private void writeBatch(final DataOutputStream output, final int[] batch, final int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+
+        output.writeByte(BATCH_FRAME);
+        output.writeLong(sentSequence.get() + count);
+        output.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            output.writeInt(batch[i]);
+        }
+        sentSequence.addAndGet(count);
+    }
+
+    /**
+     * Start a thread reading the follower's acknowledgements until the follower socket is closed
+     *
+     * @param socket The follower socket
+     * @throws IOException When there is an IO issue with the follower socket
+     */
+    private void startAckReader(final Socket socket) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread ackReaderThread = new Thread(() -> {
+            try {
+                while (true) {
+                    long sequence = input.readLong();
+                    ackedSequence = sequence;
+                    if (sequence == sentSequence.get()) {
+                        caughtUpMillis = System.currentTimeMillis();
+                    }
+                }
+            } catch (IOException e) {
+                // The follower went away. The sender finds out on its next write.
+            }
+        }, "NewRelic Project Replication Ack Reader");
+        ackReaderThread.setDaemon(true);
+        ackReaderThread.start();
+    }
+
+    /**
+     * Get the count of new unique numbers the follower hasn't acknowledged yet, including those still waiting in
+     * the ring buffer
+     *
+     * @return The replication lag in numbers
+     */
+    public long getLagNumbers() {
+        return ringBuffer.size() + sentSequence.get() - ackedSequence;
+    }
+
+    /**
+     * Get how long it has been since the follower had acknowledged every number sent to it, or zero if nothing is
+     * waiting to be acknowledged
+     *
+     * @return The replication lag in milliseconds
+     */
+    public long getLagMillis() {
+        return getLagNumbers() == 0 ? 0 : System.currentTimeMillis() - caughtUpMillis;
+    }
+
+    /**
+     * Get the replication status string
+     *
+     * @return The replication status
+     */
+    public String getStatus() {
+        String follower = followerAddress;
+        if (follower == null) {
+            return String.format("Replication: no follower connected, %d numbers waiting", ringBuffer.size());
+        }
+        return String.format("Replication to %s: lag %d numbers, %d ms", follower, getLagNumbers(), getLagMillis());
+    }
+
+    /**
+     * Stop replicating. Gives a connected follower a few seconds to acknowledge every waiting number, then closes
+     * the replication server socket and the follower connection.
+     */
+    @Override
+    public void close() {
+        long deadline = System.currentTimeMillis() + CLOSE_DRAIN_TIMEOUT;
+        while (followerAddress != null && getLagNumbers() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        stopped = true;
+        numbersService.setUniqueNumberListener(null);
+
+        if (statusTimerExecutor != null) {
+            statusTimerExecutor.shutdownNow();
+        }
+
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            Socket socket = followerSocket;
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (senderThread != null) {
+            try {
+                senderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ringBuffer.halt();
+    }
+}
@@ -0,0 +1,154 @@
+package com.krisleonard.newrelic.project.router;
+
+import com.krisleonard.newrelic.project.server.AdminClient;
+import com.krisleonard.newrelic.project.stats.StatsTotals;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A backend socket server in the router's cluster. Numbers are sent to the backend round robin over a pool of
+ * pipelined connections and its totals are read from its admin port. Numbers are only written to the backend in
+ * the order they were sent when they share a connection.
+ */
+public class Backend implements Closeable {
+
+    /**
+     * The backend host
+     */
+    private final String host;
+
+    /**
+     * The backend client connection port
+     */
+    private final int port;
+
+    /**
+     * The pool of pipelined connections to the backend
+     */
+    private final BackendConnection[] connections;
+
+    /**
+     * The count of numbers sent, used to pick the next pooled connection
+     */
+    private final AtomicInteger sendCount = new AtomicInteger();
+
+    /**
+     * The client for the backend's admin port
+     */
+    private final AdminClient adminClient;
+
+    /**
+     * The backend totals from the last successful refresh, or null if there hasn't been one
+     */
+    private volatile StatsTotals totals = null;
+
+    /**
+     * Indicator of if the last refresh succeeded
+     */
+    private volatile boolean up = false;
+
+    /**
+     * Create a backend and open its connection pool.
+     *
+     * @param host The backend host
+     * @param port The backend client connection port
+     * @param adminPort The backend admin port
+     * @param connectionCount The number of pipelined connections to the backend
+     */
+    public Backend(String host, int port, int adminPort, int connectionCount) {
+        this.host = host;
+        this.port = port;
+        this.connections = new BackendConnection[connectionCount];
+        for (int i = 0; i < connectionCount; i++) {
+            connections[i] = new BackendConnection(host, port, "NewRelic Project Router " + this + "-" + i);
+        }
+        this.adminClient = new AdminClient(host, adminPort);
+    }
+
+    /**
+     * Create a backend from a host:port:adminPort specification and open its connection pool.
+     *
+     * @param specification The backend specification
+     * @param connectionCount The number of pipelined connections to the backend
+     * @return The backend
+     * @throws IllegalArgumentException When the specification is invalid
+     */
+    public static Backend parse(String specification, int connectionCount) throws IllegalArgumentException {
+        String[] parts = specification.trim().split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Backend must be host:port:adminPort: " + specification);
+        }
+        return new Backend(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), connectionCount);
+    }
+
+    /**
+     * Queue a number to be sent to the backend on the next pooled connection, round robin, waiting if that
+     * connection's ring buffer is full. Ordering is only kept between numbers that are queued on the same
+     * connection.
+     *
+     * @param number The number
+     * @return True if the number was queued. False if the backend has been closed.
+     */
+    public boolean send(int number) {
+        return connections[Math.floorMod(sendCount.getAndIncrement(), connections.length)].send(number);
+    }
+
+    /**
+     * Refresh the backend totals from its admin port. A backend that doesn't answer is marked down and keeps its
+     * last known totals.
+     */
+    public void refreshTotals() {
+        try {
+            List<String> response = adminClient.request("TOTALS");
+            if (response.isEmpty()) {
+                throw new IOException("Empty TOTALS response");
+            }
+            totals = StatsTotals.parse(response.get(0));
+            up = true;
+        } catch (IOException | IllegalArgumentException e) {
+            up = false;
+        }
+    }
+
+    /**
+     * Get the backend totals from the last successful refresh
+     *
+     * @return The backend totals, or null if the backend has never answered
+     */
+    public StatsTotals getTotals() {
+        return totals;
+    }
+
+    /**
+     * Check if the backend answered the last refresh
+     *
+     * @return If the backend is up
+     */
+    public boolean isUp() {
+        return up;
+    }
+
+    /**
+     * Close the connection pool once all queued numbers are sent, and the admin connection.
+     */
+    @Override
+    public void close() {
+        for (BackendConnection connection : connections) {
+            connection.close();
+        }
+        adminClient.close();
+    }
+
+    /**
+     * Get the backend host and client connection port
+     *
+     * @return The backend as host:port
+     */
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,249 @@
+package com.krisleonard.newrelic.project.router;
+
+import com.krisleonard.newrelic.project.ingest.IngestRingBuffer;
+import com.krisleonard.newrelic.project.ingest.WaitStrategy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import static com.krisleonard.newrelic.project.service.NumbersService.NUMBER_CHARACTER_COUNT;
+
+/**
+ * A pipelined connection from the router to a backend socket server. Client workers publish numbers to the
+ * connection's ring buffer without waiting on the network, and the connection's writer thread drains them in
+ * batches and writes them to the backend, flushing whenever the ring buffer is empty. If a write fails the writer
+ * reconnects and resends that batch, so a number may reach the backend twice. There are no acknowledgements from
+ * the backend. A successful write only means the bytes reached the socket's send buffer, so numbers written
+ * shortly before a backend dies can be lost.
+ */
+public class BackendConnection implements Closeable {
+
+    /**
+     * The ring buffer size
+     */
+    private static final int RING_BUFFER_SIZE = 16384;
+
+    /**
+     * The maximum count of numbers written at once
+     */
+    private static final int WRITE_BATCH_SIZE = 1024;
+
+    /**
+     * The count of bytes per number line written to the backend
+     */
+    private static final int LINE_BYTE_COUNT = NUMBER_CHARACTER_COUNT + 1;
+
+    /**
+     * The delay before reconnecting to a failed backend in milliseconds
+     */
+    private static final long RECONNECT_DELAY = 1000;
+
+    /**
+     * The backend host
+     */
+    private final String host;
+
+    /**
+     * The backend client connection port
+     */
+    private final int port;
+
+    /**
+     * The numbers waiting to be written to the backend
+     */
+    private final IngestRingBuffer ringBuffer = new IngestRingBuffer(RING_BUFFER_SIZE, WaitStrategy.PARK);
+
+    /**
+     * The writer thread
+     */
+    private final Thread writerThread;
+
+    /**
+     * Indicator of if the writer thread should keep running
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The socket to the backend. Only used by the writer thread.
+     */
+    private Socket socket = null;
+
+    /**
+     * The socket output stream. Only used by the writer thread.
+     */
+    private OutputStream outputStream = null;
+
+    /**
+     * Create a backend connection and start its writer thread. The socket is connected by the writer thread.
+     *
+     * @param host The backend host
+     * @param port The backend client connection port
+     * @param name The name of the writer thread
+     */
+    public BackendConnection(final String host, final int port, final String name) {
+        this.host = host;
+        this.port = port;
+        this.writerThread = new Thread(this::writeNumbers, name);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queue a number to be written to the backend, waiting if the connection's ring buffer is full.
+     *
+     * @param number The number
+     * @return True if the number was queued. False if the connection has been closed.
+     */
+    public boolean send(final int number) {
+        return ringBuffer.publish(number);
+    }
+
+    /**
+     * The writer loop. Drains batches from the ring buffer and writes them to the backend until closed and empty.
+     */
+    private void writeNumbers() {
+        int[] batch = new int[WRITE_BATCH_SIZE];
+        byte[] lines = new byte[WRITE_BATCH_SIZE * LINE_BYTE_COUNT];
+        boolean unflushed = false;
+        int idleCount = 0;
+
+        while (true) {
+            int count = ringBuffer.drain(batch, WRITE_BATCH_SIZE);
+            if (count > 0) {
+                encode(batch, count, lines);
+                write(lines, count * LINE_BYTE_COUNT);
+                unflushed = true;
+                idleCount = 0;
+            } else if (unflushed) {
+                // Nothing more to batch so send what has been written
+                flush();
+                unflushed = false;
+            } else if (!running) {
+                break;
+            } else {
+                WaitStrategy.PARK.idle(idleCount);
+                idleCount = Math.min(idleCount + 1, WaitStrategy.MAX_IDLE_COUNT);
+            }
+        }
+        disconnect();
+    }
+
+    /**
+     * Encode numbers as nine digit, zero padded, line feed terminated lines
+     *
+     * @param numbers The numbers
+     * @param count The count of numbers to encode
+     * @param lines The buffer to encode the lines into
+     */
+    static void encode(final int[] numbers, final int count, final byte[] lines) {
+        for (int i = 0; i < count; i++) {
+            int offset = i * LINE_BYTE_COUNT;
+            int remaining = numbers[i];
+            for (int digit = NUMBER_CHARACTER_COUNT - 1; digit >= 0; digit--) {
+                lines[offset + digit] = (byte) ('0' + remaining % 10);
+                remaining /= 10;
+            }
+            lines[offset + NUMBER_CHARACTER_COUNT] = '\n';
+        }
+    }
+
+    /**
+     * Write bytes to the backend, reconnecting and retrying until the write succeeds or the connection is closed.
+     *
+     * @param bytes The bytes to write
+     * @param length The count of bytes to write
+     */
+    private void write(final byte[] bytes, final int length) {
+        while (true) {
+            try {
+                connect();
+                outputStream.write(bytes, 0, length);
+                return;
+            } catch (IOException e) {
+                if (!handleFailure(e)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Flush the written bytes to the backend, reconnecting if the backend has failed
+     */
+    private void flush() {
+        try {
+            if (outputStream != null) {
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            handleFailure(e);
+        }
+    }
+
+    /**
+     * Connect to the backend if not connected
+     *
+     * @throws IOException When the backend can't be connected to
+     */
+    private void connect() throws IOException {
+        if (socket == null) {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            outputStream = socket.getOutputStream();
+        }
+    }
+
+    /**
+     * Handle a backend IO failure by disconnecting and waiting before the next reconnect
+     *
+     * @param e The failure
+     * @return True if the write should be retried. False if the connection has been closed.
+     */
+    private boolean handleFailure(final IOException e) {
+        System.out.println("Backend " + host + ":" + port + " failed, reconnecting: " + e.getMessage());
+        disconnect();
+        if (!running) {
+            return false;
+        }
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Close the backend socket if connected
+     */
+    private void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            socket = null;
+            outputStream = null;
+        }
+    }
+
+    /**
+     * Close the connection once all queued numbers have been written to the backend.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ringBuffer.halt();
+    }
+}
@@ -0,0 +1,45 @@
+package com.krisleonard.newrelic.project.router;
+
+import static com.krisleonard.newrelic.project.service.NumbersService.MAX_NUMBER;
+
+/**
+ * How the router picks the backend for a number.
+ */
+public enum ShardStrategy {
+
+    /**
+     * Split the number range into equal contiguous key ranges, one per backend.
+     */
+    RANGE {
+        @Override
+        public int shardFor(final int number, final int shardCount) {
+            return (int) ((long) number * shardCount / (MAX_NUMBER + 1L));
+        }
+    },
+
+    /**
+     * Hash the number so consecutive numbers are spread across backends.
+     */
+    HASH {
+        @Override
+        public int shardFor(final int number, final int shardCount) {
+            // Murmur3 finalizer so nearby numbers land on different backends
+            int hash = number;
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            hash ^= hash >>> 16;
+            return Integer.remainderUnsigned(hash, shardCount);
+        }
+    };
+
+    /**
+     * Get the shard for a number
+     *
+     * @param number The number, between zero and MAX_NUMBER
+     * @param shardCount The count of shards
+     * @return The shard index, between zero and shardCount - 1
+     */
+    public abstract int shardFor(final int number, final int shardCount);
+}
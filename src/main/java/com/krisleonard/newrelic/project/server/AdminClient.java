@@ -0,0 +1,111 @@
+package com.krisleonard.newrelic.project.server;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A client for the admin server's request/response text protocol. The connection is opened on the first request
+ * and reopened after a failure.
+ */
+public class AdminClient implements Closeable {
+
+    /**
+     * How long to wait for a response from the admin server in milliseconds
+     */
+    private static final int RESPONSE_TIMEOUT = 5000;
+
+    /**
+     * The admin server host
+     */
+    private final String host;
+
+    /**
+     * The admin server port
+     */
+    private final int port;
+
+    /**
+     * The admin connection socket
+     */
+    private Socket socket = null;
+
+    /**
+     * The admin connection reader
+     */
+    private BufferedReader reader = null;
+
+    /**
+     * The admin connection writer
+     */
+    private PrintWriter writer = null;
+
+    /**
+     * Create an admin client.
+     *
+     * @param host The admin server host
+     * @param port The admin server port
+     */
+    public AdminClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Send a request and read its response
+     *
+     * @param request The request line
+     * @return The response lines, without the END line
+     * @throws IOException When there is an IO issue talking to the admin server
+     */
+    public synchronized List<String> request(String request) throws IOException {
+        try {
+            if (socket == null) {
+                socket = new Socket(host, port);
+                socket.setSoTimeout(RESPONSE_TIMEOUT);
+                reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                writer = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8);
+            }
+
+            writer.println(request);
+            writer.flush();
+
+            List<String> response = new ArrayList<>();
+            String line;
+            while (!AdminServer.END_OF_RESPONSE.equals(line = reader.readLine())) {
+                if (line == null) {
+                    throw new EOFException("Admin server closed the connection");
+                }
+                response.add(line);
+            }
+            return response;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the admin connection
+     */
+    @Override
+    public synchronized void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing else to do
+            }
+            socket = null;
+            reader = null;
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.krisleonard.newrelic.project.server;
+
+import com.krisleonard.newrelic.project.stats.StatsHistory;
+import com.krisleonard.newrelic.project.stats.StatsInterval;
+import com.krisleonard.newrelic.project.util.ThreadUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The admin server. Listens on a local port and answers text requests about the server stats history. Each request
+ * is a single line and each response is zero or more lines followed by an END line. Requests are:
+ * <pre>
+ * STATS &lt;1s|10s|1m&gt; [count]  The most recent intervals at the granularity, oldest first
+ * TOTALS                       The cumulative totals since the server started
+ * HELP                         The list of requests
+ * QUIT                         Close the connection
+ * </pre>
+ * Requests only read the lock-free stats history, so they never touch the ingest path.
+ */
+public class AdminServer {
+
+    /**
+     * The line that ends every response
+     */
+    public static final String END_OF_RESPONSE = "END";
+
+    /**
+     * The default count of intervals returned by a STATS request
+     */
+    private static final int DEFAULT_INTERVAL_COUNT = 60;
+
+    /**
+     * The admin connection pool size
+     */
+    private static final int ADMIN_POOL_SIZE = 2;
+
+    /**
+     * The admin connection work queue size
+     */
+    private static final int ADMIN_WORK_QUEUE_SIZE = 16;
+
+    /**
+     * How long an admin connection can be idle before it is closed, in milliseconds
+     */
+    private static final int ADMIN_IDLE_TIMEOUT = 60 * 1000;
+
+    /**
+     * The stats history to answer requests from
+     */
+    private final StatsHistory statsHistory;
+
+    /**
+     * The admin server socket
+     */
+    private ServerSocket serverSocket = null;
+
+    /**
+     * The admin connection thread pool executor
+     */
+    private ThreadPoolExecutor threadPoolExecutor = null;
+
+    /**
+     * Indicator of if the admin server is stopped
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Create an admin server.
+     *
+     * @param statsHistory The stats history to answer requests from
+     */
+    public AdminServer(StatsHistory statsHistory) {
+        this.statsHistory = statsHistory;
+    }
+
+    /**
+     * Start listening on the loopback address on the input port. Connections are accepted on a daemon thread.
+     *
+     * @param port The admin port
+     * @throws IOException When the admin port can't be bound
+     */
+    public void start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        threadPoolExecutor = ThreadUtil.createDaemonExecutor(ADMIN_POOL_SIZE, ADMIN_WORK_QUEUE_SIZE,
+                "NewRelic Project Admin Server");
+
+        Thread acceptThread = new Thread(this::acceptConnections, "NewRelic Project Admin Server Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        System.out.println("Admin server listening on " + serverSocket.getLocalSocketAddress());
+    }
+
+    /**
+     * Accept admin connections until stopped
+     */
+    private void acceptConnections() {
+        while (!stopped) {
+            try {
+                Socket socket = serverSocket.accept();
+                threadPoolExecutor.execute(() -> serveConnection(socket));
+            } catch (IOException e) {
+                if (!stopped) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Answer requests on an admin connection until it is closed or sends QUIT
+     *
+     * @param socket The admin connection socket
+     */
+    private void serveConnection(Socket socket) {
+        try (Socket adminSocket = socket;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(adminSocket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(adminSocket.getOutputStream(), false, StandardCharsets.UTF_8)) {
+            adminSocket.setSoTimeout(ADMIN_IDLE_TIMEOUT);
+
+            String request;
+            while ((request = reader.readLine()) != null) {
+                if ("QUIT".equalsIgnoreCase(request.trim())) {
+                    break;
+                }
+                writer.print(handleRequest(request));
+                writer.println(END_OF_RESPONSE);
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // The admin client went away or was idle too long. Nothing else to do.
+        }
+    }
+
+    /**
+     * Build the response to one request, without the END line
+     *
+     * @param request The request line
+     * @return The response lines
+     */
+    String handleRequest(String request) {
+        String[] parts = request.trim().split("\\s+");
+        String command = parts[0].toUpperCase();
+        StringBuilder response = new StringBuilder();
+
+        switch (command) {
+            case "STATS":
+                StatsHistory.Granularity granularity =
+                        parts.length > 1 ? StatsHistory.Granularity.fromLabel(parts[1]) : null;
+                if (granularity == null) {
+                    return errorResponse("STATS needs a granularity of 1s, 10s or 1m");
+                }
+
+                int count = DEFAULT_INTERVAL_COUNT;
+                if (parts.length > 2) {
+                    try {
+                        count = Integer.parseInt(parts[2]);
+                    } catch (NumberFormatException e) {
+                        return errorResponse("Invalid count: " + parts[2]);
+                    }
+                    if (count < 1) {
+                        return errorResponse("Invalid count: " + parts[2]);
+                    }
+                }
+
+                for (StatsInterval interval : statsHistory.getIntervals(granularity, count)) {
+                    response.append(granularity.getLabel()).append(' ').append(interval)
+                            .append(System.lineSeparator());
+                }
+                return response.toString();
+            case "TOTALS":
+                return statsHistory.getTotals() + System.lineSeparator();
+            case "HELP":
+                return "STATS <1s|10s|1m> [count]" + System.lineSeparator()
+                        + "TOTALS" + System.lineSeparator()
+                        + "HELP" + System.lineSeparator()
+                        + "QUIT" + System.lineSeparator();
+            default:
+                return errorResponse("Unknown request: " + request.trim());
+        }
+    }
+
+    /**
+     * Build an error response
+     *
+     * @param message The error message
+     * @return The error response line
+     */
+    private static String errorResponse(String message) {
+        return "ERROR " + message + System.lineSeparator();
+    }
+
+    /**
+     * Stop the admin server. Closes the admin server socket and thread pool executor.
+     */
+    public void shutdown() {
+        stopped = true;
+
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (threadPoolExecutor != null) {
+            threadPoolExecutor.shutdownNow();
+            try {
+                threadPoolExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
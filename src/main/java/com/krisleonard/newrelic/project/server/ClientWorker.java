@@ -1,13 +1,24 @@
 package com.krisleonard.newrelic.project.server;
 
+import com.krisleonard.newrelic.project.ingest.IngestPipeline;
+import com.krisleonard.newrelic.project.jfr.ConnectionEvent;
+import com.krisleonard.newrelic.project.jfr.ConnectionQueueWaitEvent;
+import com.krisleonard.newrelic.project.jfr.ConnectionTurnEvent;
+import com.krisleonard.newrelic.project.jfr.InvalidInputEvent;
 import com.krisleonard.newrelic.project.service.NumbersService;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRAFImpl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
-import java.util.Scanner;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * The client worker thread for handling socket input.
+ * The client worker thread for handling socket input. When a connection scheduler is provided the worker serves its
+ * socket in turns of at most the scheduler's quantum of lines and then requeues itself, otherwise it serves the
+ * socket until it closes.
  */
 public class ClientWorker implements Runnable {
 
@@ -16,6 +27,31 @@ public class ClientWorker implements Runnable {
      */
     private static final String SERVER_TERMINATE_MESSAGE = "terminate";
 
+    /**
+     * The maximum number of numbers from this socket that can be in flight in the numbers service at once
+     */
+    private static final int MAX_IN_FLIGHT_NUMBERS = 256;
+
+    /**
+     * The maximum count of parsed numbers batched before publishing to the ingest pipeline
+     */
+    private static final int PUBLISH_BATCH_SIZE = 256;
+
+    /**
+     * The socket read buffer size
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * The maximum line length kept. Longer lines are truncated, which makes them invalid numbers.
+     */
+    private static final int MAX_LINE_LENGTH = 64;
+
+    /**
+     * The cap on the count of consecutive turns without data
+     */
+    private static final int MAX_EMPTY_TURNS = 64;
+
     /**
      * The socket to read data from
      */
@@ -31,6 +67,96 @@ public class ClientWorker implements Runnable {
      */
     private NumbersService numbersService = null;
 
+    /**
+     * Limits the numbers from this socket that are in flight in the numbers service
+     */
+    private final Semaphore inFlightNumbers = new Semaphore(MAX_IN_FLIGHT_NUMBERS);
+
+    /**
+     * The ingest pipeline. When set, numbers are published to the pipeline instead of added to the numbers service.
+     */
+    private IngestPipeline ingestPipeline = null;
+
+    /**
+     * The parsed numbers waiting to be published to the ingest pipeline
+     */
+    private int[] publishBatch = null;
+
+    /**
+     * The count of parsed numbers in the publish batch
+     */
+    private int publishBatchCount = 0;
+
+    /**
+     * The connection scheduler, or null if the worker serves its socket until it closes
+     */
+    private ConnectionScheduler connectionScheduler = null;
+
+    /**
+     * The connection id
+     */
+    private long connectionId = 0;
+
+    /**
+     * The lines served since the service share was last taken
+     */
+    private final AtomicLong servedLines = new AtomicLong();
+
+    /**
+     * The total count of lines read from the socket
+     */
+    private long totalLines = 0;
+
+    /**
+     * The count of consecutive turns that read no data
+     */
+    private int emptyTurns = 0;
+
+    /**
+     * Why the connection is being closed
+     */
+    private String closeReason = null;
+
+    /**
+     * The JFR event covering the connection from accept to close
+     */
+    private final ConnectionEvent connectionEvent = new ConnectionEvent();
+
+    /**
+     * The JFR event covering the wait in the work queue for the next turn
+     */
+    private ConnectionQueueWaitEvent queueWaitEvent = null;
+
+    /**
+     * The socket input stream. Opened on the first turn.
+     */
+    private InputStream inputStream = null;
+
+    /**
+     * The socket read buffer. Kept across turns along with the partial line so no data is lost when a turn ends.
+     */
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+
+    /**
+     * The position of the next unread byte in the read buffer
+     */
+    private int readPosition = 0;
+
+    /**
+     * The count of bytes in the read buffer
+     */
+    private int readLimit = 0;
+
+    /**
+     * The characters of the line being read
+     */
+    private final char[] lineBuffer = new char[MAX_LINE_LENGTH];
+
+    /**
+     * The count of characters of the line being read
+     */
+    private int lineLength = 0;
+
     /**
      * Default constructor
      *
@@ -39,47 +165,376 @@ public class ClientWorker implements Runnable {
      * @param socket The socket to read data from
      */
     public ClientWorker(NumbersService numbersService, SocketServer server, Socket socket) {
+        this(numbersService, null, null, server, socket);
+    }
+
+    /**
+     * Constructor for a worker that publishes parsed numbers to an ingest pipeline when one is provided and is
+     * scheduled in turns when a connection scheduler is provided.
+     *
+     * @param numbersService The numbers service
+     * @param ingestPipeline The ingest pipeline, or null to add numbers to the numbers service directly
+     * @param connectionScheduler The connection scheduler, or null to serve the socket until it closes
+     * @param server The socket server
+     * @param socket The socket to read data from
+     */
+    public ClientWorker(NumbersService numbersService, IngestPipeline ingestPipeline,
+                        ConnectionScheduler connectionScheduler, SocketServer server, Socket socket) {
         this.socketServer = server;
         this.socket = socket;
         this.numbersService = numbersService;
+        this.ingestPipeline = ingestPipeline;
+        if (ingestPipeline != null) {
+            this.publishBatch = new int[PUBLISH_BATCH_SIZE];
+        }
+        this.connectionScheduler = connectionScheduler;
+        if (connectionScheduler != null) {
+            this.connectionId = connectionScheduler.nextConnectionId();
+        }
+        connectionEvent.begin();
+    }
+
+    /**
+     * Get the connection id
+     *
+     * @return The connection id
+     */
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    /**
+     * Get the remote address of the socket
+     *
+     * @return The remote address of the socket
+     */
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    /**
+     * Get the count of lines served since this method was last called and reset it
+     *
+     * @return The count of lines served
+     */
+    long takeServedLines() {
+        return servedLines.getAndSet(0);
+    }
+
+    /**
+     * Record that the worker is being put in the work queue to wait for a turn
+     */
+    void queued() {
+        queueWaitEvent = new ConnectionQueueWaitEvent();
+        queueWaitEvent.begin();
     }
 
     /** {@inheritDoc} */
     @Override
     public void run() {
-        // While the socket server is running
-        if(!socketServer.stopping()) {
+        if (queueWaitEvent != null) {
+            queueWaitEvent.end();
+            if (queueWaitEvent.shouldCommit()) {
+                queueWaitEvent.connectionId = connectionId;
+                queueWaitEvent.commit();
+            }
+            queueWaitEvent = null;
+        }
+
+        // Serve turns while the socket server is running and the connection is open. When there is a scheduler,
+        // give up the thread after each turn unless the work queue is full.
+        do {
+            if (socketServer.stopping()) {
+                closeReason = "server stopping";
+            }
+            if (closeReason != null || !serveTurn()) {
+                finish();
+                return;
+            }
+        } while (connectionScheduler == null || !connectionScheduler.requeue(this, emptyTurns));
+    }
+
+    /**
+     * Close the connection of a worker that is waiting for a turn when the server stops. Must only be called for
+     * a worker that is not running and will not be run again.
+     */
+    void abort() {
+        closeReason = "server stopped";
+        finish();
+    }
+
+    /**
+     * Serve one turn of at most the quantum of lines from the socket. Without a scheduler the turn lasts until the
+     * socket closes.
+     *
+     * @return True if the connection is still open. False if it should be closed.
+     */
+    private boolean serveTurn() {
+        int quantumLines = connectionScheduler == null ? Integer.MAX_VALUE : connectionScheduler.getQuantumLines();
+        int lines = 0;
+        boolean open = true;
+        ConnectionTurnEvent turnEvent = new ConnectionTurnEvent();
+        turnEvent.begin();
+        try {
+            if (inputStream == null) {
+                // Wait only briefly for data when scheduled so idle connections give up their turn
+                if (connectionScheduler != null) {
+                    socket.setSoTimeout(connectionScheduler.getIdleTimeoutMillis());
+                }
+                inputStream = socket.getInputStream();
+            }
+
             // Read data from the socket
-            try (Scanner scanner = new Scanner(socket.getInputStream())) {
-                while (scanner.hasNextLine())
-                {
-                    String socketData = scanner.nextLine();
-                    if (socketData.length() == 0)
-                    {
-                        break; // blank line terminates input
-                    }
+            while (open && lines < quantumLines) {
+                String socketData = readLine();
+                if (socketData == null || socketData.length() == 0) {
+                    // End of the stream or a blank line terminates input
+                    closeReason = socketData == null ? "end of stream" : "blank line";
+                    open = false;
+                    break;
+                }
+                lines++;
 
-                    if(SERVER_TERMINATE_MESSAGE.equalsIgnoreCase(socketData)) {
-                        socketServer.shutdown();
-                    }
+                if(SERVER_TERMINATE_MESSAGE.equalsIgnoreCase(socketData)) {
+                    socketServer.shutdown();
+                }
+
+                // If the number is invalid or can't be accepted shutdown the socket
+                open = ingestPipeline != null ? publishNumber(socketData, !dataReady()) : addNumber(socketData);
+            }
+        } catch (SocketTimeoutException e) {
+            // No data is ready so give up the turn
+        } catch (IOException e) {
+            // If there is a socket reading IO exception print to the console and end the threat
+            e.printStackTrace();
+            closeReason = "socket error";
+            open = false;
+        } finally {
+            servedLines.addAndGet(lines);
+            socketServer.getIngestCounters().addLines(lines);
+            totalLines += lines;
+            emptyTurns = lines > 0 ? 0 : Math.min(emptyTurns + 1, MAX_EMPTY_TURNS);
+        }
+
+        // Never hold parsed numbers while waiting for another turn
+        if (publishBatchCount > 0) {
+            open &= publishBatch();
+        }
+
+        turnEvent.end();
+        if (turnEvent.shouldCommit()) {
+            turnEvent.connectionId = connectionId;
+            turnEvent.linesRead = lines;
+            turnEvent.commit();
+        }
+        return open;
+    }
+
+    /**
+     * Finish the connection. Waits for the numbers still in flight from this socket and then closes the socket.
+     */
+    private void finish() {
+        if (publishBatchCount > 0) {
+            publishBatch();
+        }
+        inFlightNumbers.acquireUninterruptibly(MAX_IN_FLIGHT_NUMBERS);
+
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (connectionScheduler != null) {
+            connectionScheduler.closed(this);
+        }
+
+        connectionEvent.end();
+        if (connectionEvent.shouldCommit()) {
+            connectionEvent.connectionId = connectionId;
+            connectionEvent.remoteAddress = getRemoteAddress();
+            connectionEvent.linesRead = totalLines;
+            connectionEvent.closeReason = closeReason;
+            connectionEvent.commit();
+        }
+    }
 
-                    try {
-                        // Add the number to the file
-                        numbersService.addNumber(socketData);
-                    } catch (IllegalArgumentException ex) {
-                        // If the number is invalid shutdown the socket
-                        socket.close();
-                    } catch (IOException ex) {
-                        // If there is an IO issue terminate the server
-                        System.out.println("IO error while adding number. Shutting down server");
-                        socket.close();
-                        socketServer.shutdown();
+    /**
+     * Read a line from the socket. Line terminators are a line feed or a carriage return followed by a line feed.
+     * A partial line is kept if the read times out, and reading resumes from it on the next call.
+     *
+     * @return The line without its terminator, or null if the end of the stream has been reached
+     * @throws IOException When there is an IO issue reading the socket, including a read timeout
+     */
+    private String readLine() throws IOException {
+        while (true) {
+            if (readPosition == readLimit) {
+                int bytesRead = inputStream.read(readBuffer);
+                if (bytesRead == -1) {
+                    // Return any final unterminated line
+                    return lineLength > 0 ? takeLine() : null;
+                }
+                readPosition = 0;
+                readLimit = bytesRead;
+            }
+
+            while (readPosition < readLimit) {
+                char character = (char) (readBuffer[readPosition++] & 0xFF);
+                if (character == '\n') {
+                    // Drop the carriage return of a carriage return and line feed pair
+                    if (lineLength > 0 && lineLength <= MAX_LINE_LENGTH && lineBuffer[lineLength - 1] == '\r') {
+                        lineLength--;
                     }
+                    return takeLine();
                 }
-            } catch (IOException e) {
-                // If there is a socket reading IO exception print to the console and end the threat
-                e.printStackTrace();
+                if (lineLength < MAX_LINE_LENGTH) {
+                    lineBuffer[lineLength] = character;
+                }
+                lineLength++;
             }
         }
     }
+
+    /**
+     * Take the line read so far and reset the line buffer
+     *
+     * @return The line
+     */
+    private String takeLine() {
+        String line = new String(lineBuffer, 0, Math.min(lineLength, MAX_LINE_LENGTH));
+        lineLength = 0;
+        return line;
+    }
+
+    /**
+     * Check if more socket data can be read without blocking
+     *
+     * @return If more socket data is ready
+     * @throws IOException When there is an IO issue with the socket
+     */
+    private boolean dataReady() throws IOException {
+        return readPosition < readLimit || inputStream.available() > 0;
+    }
+
+    /**
+     * Check if a parked worker's socket has data ready. Must only be called while the worker is not running.
+     *
+     * @return True if socket data is ready, or the socket has failed and a turn should find out why
+     */
+    boolean hasDataReady() {
+        try {
+            return inputStream == null || dataReady();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Add a number to the numbers service. The socket keeps being read while the add is in flight. The line is parsed
+     * and checked against the known numbers once here, and known duplicates are counted without calling into the
+     * numbers service's add path.
+     *
+     * @param socketData The line read from the socket
+     * @return True if the number was accepted. False if it is invalid or the worker was interrupted.
+     */
+    private boolean addNumber(String socketData) {
+        int number;
+        try {
+            number = NumbersServiceRAFImpl.convertToInteger(socketData);
+        } catch (IllegalArgumentException ex) {
+            return invalidInput(socketData);
+        }
+        if (numbersService.addKnownDuplicate(number)) {
+            return true;
+        }
+
+        try {
+            inFlightNumbers.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            closeReason = "interrupted";
+            return false;
+        }
+
+        numbersService.addNumberAsync(number).whenComplete((result, ex) -> {
+            inFlightNumbers.release();
+            if (ex != null) {
+                handleAddNumberIOError();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Parse a number and batch it for the ingest pipeline. Known duplicates are counted here and never published.
+     * The batch is published when it is full or when no more socket data is ready, so numbers are never held while
+     * the worker blocks on the socket.
+     *
+     * @param socketData The line read from the socket
+     * @param flush If the batch should be published now
+     * @return True if the number was accepted. False if it is invalid or the pipeline has been halted.
+     */
+    private boolean publishNumber(String socketData, boolean flush) {
+        int number;
+        try {
+            number = NumbersServiceRAFImpl.convertToInteger(socketData);
+        } catch (IllegalArgumentException ex) {
+            return invalidInput(socketData);
+        }
+        if (!numbersService.addKnownDuplicate(number)) {
+            publishBatch[publishBatchCount++] = number;
+        }
+
+        if ((flush && publishBatchCount > 0) || publishBatchCount == publishBatch.length) {
+            return publishBatch();
+        }
+        return true;
+    }
+
+    /**
+     * Publish the batched numbers to the ingest pipeline
+     *
+     * @return True if the numbers were published. False if the pipeline has been halted.
+     */
+    private boolean publishBatch() {
+        int count = publishBatchCount;
+        publishBatchCount = 0;
+        if (!ingestPipeline.publish(publishBatch, count)) {
+            closeReason = "ingest pipeline halted";
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record that invalid input was read from the socket
+     *
+     * @param socketData The invalid line read from the socket
+     * @return False, as the connection should be closed
+     */
+    private boolean invalidInput(String socketData) {
+        closeReason = "invalid input";
+        socketServer.getIngestCounters().incrementInvalidLines();
+
+        InvalidInputEvent invalidInputEvent = new InvalidInputEvent();
+        if (invalidInputEvent.shouldCommit()) {
+            invalidInputEvent.connectionId = connectionId;
+            invalidInputEvent.input = socketData;
+            invalidInputEvent.commit();
+        }
+        return false;
+    }
+
+    /**
+     * Handle an IO issue while adding a number. The socket is closed and the server is terminated.
+     */
+    private void handleAddNumberIOError() {
+        System.out.println("IO error while adding number. Shutting down server");
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        socketServer.shutdown();
+    }
 }
@@ -0,0 +1,307 @@
+package com.krisleonard.newrelic.project.server;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules client workers on the client connection thread pool in bounded quanta. A client worker serves at most
+ * the quantum of lines from its socket per turn and then goes to the back of the work queue, so connections are
+ * serviced round robin and long lived connections can't hold a pool thread while other connections wait.
+ * Connections that stay idle for several turns are parked off the pool and only queued again once their socket
+ * has data, so idle connections don't keep waking pool threads. Data arriving on a parked connection waits at most
+ * PARK_CHECK_MILLIS.
+ */
+public class ConnectionScheduler {
+
+    /**
+     * The maximum number of connections listed in the service share report
+     */
+    private static final int MAX_REPORTED_CONNECTIONS = 10;
+
+    /**
+     * The count of consecutive turns without data before a connection is parked
+     */
+    private static final int IDLE_TURNS_BEFORE_PARKING = 3;
+
+    /**
+     * How often parked connections are checked for data in milliseconds
+     */
+    private static final long PARK_CHECK_MILLIS = 100;
+
+    /**
+     * How often a parked connection without data is still given a turn, in milliseconds
+     */
+    private static final long IDLE_TURN_INTERVAL = 1000;
+
+    /**
+     * The client connection thread pool executor
+     */
+    private final ThreadPoolExecutor threadPoolExecutor;
+
+    /**
+     * The maximum count of lines a client worker serves per turn
+     */
+    private final int quantumLines;
+
+    /**
+     * How long a client worker waits for socket data before giving up its turn, in milliseconds
+     */
+    private final int idleTimeoutMillis;
+
+    /**
+     * The open connections
+     */
+    private final Set<ClientWorker> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The next connection id
+     */
+    private final AtomicLong nextConnectionId = new AtomicLong(1);
+
+    /**
+     * The lines served since the last service share report by connections that have since closed
+     */
+    private final AtomicLong closedConnectionLines = new AtomicLong();
+
+    /**
+     * The turns served in place since the last service share report because the work queue was full
+     */
+    private final AtomicLong queueFullTurns = new AtomicLong();
+
+    /**
+     * The parked idle connections and when each was parked, in milliseconds
+     */
+    private final Map<ClientWorker, Long> parkedConnections = new ConcurrentHashMap<>();
+
+    /**
+     * Indicator of if parked connections are no longer checked
+     */
+    private volatile boolean parkingStopped = false;
+
+    /**
+     * The executor that checks parked connections for data
+     */
+    private final ScheduledExecutorService parkingExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NewRelic Project Connection Parking");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Create a connection scheduler.
+     *
+     * @param threadPoolExecutor The client connection thread pool executor
+     * @param quantumLines The maximum count of lines a client worker serves per turn
+     * @param idleTimeoutMillis How long a client worker waits for socket data before giving up its turn
+     */
+    public ConnectionScheduler(ThreadPoolExecutor threadPoolExecutor, int quantumLines, int idleTimeoutMillis) {
+        this.threadPoolExecutor = threadPoolExecutor;
+        this.quantumLines = quantumLines;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        parkingExecutor.scheduleWithFixedDelay(this::unparkReady, PARK_CHECK_MILLIS, PARK_CHECK_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the maximum count of lines a client worker serves per turn
+     *
+     * @return The quantum in lines
+     */
+    public int getQuantumLines() {
+        return quantumLines;
+    }
+
+    /**
+     * Get how long a client worker waits for socket data before giving up its turn
+     *
+     * @return The idle timeout in milliseconds
+     */
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Get the count of open connections
+     *
+     * @return The count of open connections
+     */
+    public int getOpenConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Get an id for a new connection
+     *
+     * @return The connection id
+     */
+    long nextConnectionId() {
+        return nextConnectionId.getAndIncrement();
+    }
+
+    /**
+     * Submit the client worker for a new connection. Waits if the work queue is full.
+     *
+     * @param clientWorker The client worker for the connection
+     */
+    public void submit(ClientWorker clientWorker) {
+        connections.add(clientWorker);
+        clientWorker.queued();
+        threadPoolExecutor.execute(clientWorker);
+    }
+
+    /**
+     * Put a client worker that has used its turn at the back of the work queue, or park it if its connection has
+     * been idle for several turns. Never waits, so a pool thread can't block on a full work queue that only pool
+     * threads drain. When the work queue is full the caller serves another turn in place, which is counted in the
+     * service share report.
+     *
+     * @param clientWorker The client worker
+     * @param emptyTurns The count of consecutive turns the connection had no data
+     * @return True if the client worker was queued or parked. False if the caller should keep serving the
+     * connection.
+     */
+    boolean requeue(ClientWorker clientWorker, int emptyTurns) {
+        if (threadPoolExecutor.isShutdown()) {
+            return false;
+        }
+
+        if (emptyTurns >= IDLE_TURNS_BEFORE_PARKING && park(clientWorker)) {
+            return true;
+        }
+
+        clientWorker.queued();
+        if (threadPoolExecutor.getQueue().offer(clientWorker)) {
+            return true;
+        }
+        queueFullTurns.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Park an idle client worker off the thread pool until its socket has data
+     *
+     * @param clientWorker The client worker
+     * @return True if the client worker was parked. False if parking has been stopped.
+     */
+    private boolean park(ClientWorker clientWorker) {
+        parkedConnections.put(clientWorker, System.currentTimeMillis());
+        // Parking may have stopped after the parked connections were collected by shutdown
+        if (parkingStopped && parkedConnections.remove(clientWorker) != null) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Put the parked client workers whose sockets have data in the work queue. A parked client worker without data
+     * is still queued about once every IDLE_TURN_INTERVAL so a blocking read can notice the connection has closed.
+     * A client worker that doesn't fit in the work queue stays parked until the next check.
+     */
+    private void unparkReady() {
+        if (threadPoolExecutor.isShutdown()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<ClientWorker, Long> parked : parkedConnections.entrySet()) {
+            ClientWorker clientWorker = parked.getKey();
+            if (!clientWorker.hasDataReady() && now - parked.getValue() < IDLE_TURN_INTERVAL) {
+                continue;
+            }
+
+            // A client worker is never parked and in the work queue at the same time
+            parkedConnections.remove(clientWorker);
+            clientWorker.queued();
+            if (!threadPoolExecutor.getQueue().offer(clientWorker)) {
+                parkedConnections.put(clientWorker, parked.getValue());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop checking parked client workers. Called once the thread pool has been shut down, so parked client workers
+     * are never queued again.
+     *
+     * @return The client workers that were still parked
+     */
+    public List<ClientWorker> shutdown() {
+        parkingStopped = true;
+        parkingExecutor.shutdownNow();
+        try {
+            parkingExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<ClientWorker> parked = new ArrayList<>();
+        for (ClientWorker clientWorker : parkedConnections.keySet()) {
+            if (parkedConnections.remove(clientWorker) != null) {
+                parked.add(clientWorker);
+            }
+        }
+        return parked;
+    }
+
+    /**
+     * Record that a client worker's connection has closed
+     *
+     * @param clientWorker The client worker
+     */
+    void closed(ClientWorker clientWorker) {
+        if (connections.remove(clientWorker)) {
+            closedConnectionLines.addAndGet(clientWorker.takeServedLines());
+        }
+    }
+
+    /**
+     * Get the report of each connection's share of the lines served since the last report. The busiest connections
+     * are listed. This method also resets the served line counters.
+     *
+     * @return The service share report
+     */
+    public String getServiceShareReport() {
+        // Collect and reset the per connection counts
+        List<Map.Entry<ClientWorker, Long>> served = new ArrayList<>();
+        long closedLines = closedConnectionLines.getAndSet(0);
+        long totalLines = closedLines;
+        for (ClientWorker clientWorker : connections) {
+            long lines = clientWorker.takeServedLines();
+            served.add(new AbstractMap.SimpleImmutableEntry<>(clientWorker, lines));
+            totalLines += lines;
+        }
+
+        StringBuilder report = new StringBuilder(String.format(
+                "Connection service share: %d open, %d waiting, %d parked, %d lines served",
+                served.size(), threadPoolExecutor.getQueue().size(), parkedConnections.size(), totalLines));
+        long fullQueueTurns = queueFullTurns.getAndSet(0);
+        if (fullQueueTurns > 0) {
+            report.append(String.format(", %d turns served in place because the work queue was full",
+                    fullQueueTurns));
+        }
+        if (totalLines == 0) {
+            return report.toString();
+        }
+
+        // List the busiest connections first
+        served.sort(Map.Entry.<ClientWorker, Long>comparingByValue().reversed());
+        for (int i = 0; i < served.size() && i < MAX_REPORTED_CONNECTIONS; i++) {
+            ClientWorker clientWorker = served.get(i).getKey();
+            report.append(String.format("%n  #%d %s %.1f%%", clientWorker.getConnectionId(),
+                    clientWorker.getRemoteAddress(), 100.0 * served.get(i).getValue() / totalLines));
+        }
+        if (closedLines > 0) {
+            report.append(String.format("%n  closed connections %.1f%%", 100.0 * closedLines / totalLines));
+        }
+        return report.toString();
+    }
+}
@@ -1,11 +1,21 @@
 package com.krisleonard.newrelic.project.server;
 
+import com.krisleonard.newrelic.project.ingest.IngestPipeline;
+import com.krisleonard.newrelic.project.jfr.ConnectionAcceptEvent;
+import com.krisleonard.newrelic.project.jfr.ServerShutdownEvent;
 import com.krisleonard.newrelic.project.service.NumbersService;
 import com.krisleonard.newrelic.project.service.impl.NumbersServiceRAFImpl;
+import com.krisleonard.newrelic.project.stats.IngestCounters;
+import com.krisleonard.newrelic.project.stats.StatsHistory;
+import com.krisleonard.newrelic.project.stats.StatsTotals;
 import com.krisleonard.newrelic.project.util.ThreadUtil;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -25,6 +35,21 @@ public class SocketServer {
      */
     private static final int STATUS_TIMER_DELAY = 10;
 
+    /**
+     * The stats history sample delay in seconds
+     */
+    private static final int STATS_SAMPLE_DELAY = 1;
+
+    /**
+     * The default maximum count of lines a client connection is served per turn
+     */
+    public static final int DEFAULT_CONNECTION_QUANTUM_LINES = 1000;
+
+    /**
+     * The default time in milliseconds a client connection waits for data before giving up its turn
+     */
+    public static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 5;
+
     /**
      * The server socket
      */
@@ -40,6 +65,11 @@ public class SocketServer {
      */
     private ThreadPoolExecutor threadPoolExecutor = null;
 
+    /**
+     * The connection scheduler that shares the thread pool between client connections
+     */
+    private volatile ConnectionScheduler connectionScheduler = null;
+
     /**
      * The status timer executor
      */
@@ -48,13 +78,56 @@ public class SocketServer {
     /**
      * The numbers service for handling all input numbers from sockets
      */
-    private NumbersService numbersService = null;
+    private volatile NumbersService numbersService = null;
+
+    /**
+     * The optional ingest pipeline that client workers publish numbers to
+     */
+    private IngestPipeline ingestPipeline = null;
+
+    /**
+     * The cumulative socket input counters
+     */
+    private final IngestCounters ingestCounters = new IngestCounters();
+
+    /**
+     * The windowed stats history
+     */
+    private final StatsHistory statsHistory = new StatsHistory(this::getTotals);
 
     /**
      * The lock used for concurrency
      */
     private Lock socketServerLock = new ReentrantLock();
 
+    /**
+     * Default constructor. The server will use a NumbersServiceRAFImpl for handling input numbers.
+     */
+    public SocketServer() {
+    }
+
+    /**
+     * Constructor for a server that uses the input numbers service for handling input numbers.
+     *
+     * @param numbersService The numbers service for handling all input numbers from sockets
+     */
+    public SocketServer(NumbersService numbersService) {
+        this(numbersService, null);
+    }
+
+    /**
+     * Constructor for a server that has client workers publish input numbers to the ingest pipeline, which adds
+     * them to the input numbers service from its single consumer thread.
+     *
+     * @param numbersService The numbers service for handling all input numbers from sockets
+     * @param ingestPipeline The ingest pipeline for the numbers service, or null to have client workers add
+     *                       numbers to the numbers service directly
+     */
+    public SocketServer(NumbersService numbersService, IngestPipeline ingestPipeline) {
+        this.numbersService = numbersService;
+        this.ingestPipeline = ingestPipeline;
+    }
+
     /**
      * Start the socket server and listen on the input port for messages. All messages are processed by a thread pool
      * that is the size of the input client pool size.
@@ -65,30 +138,77 @@ public class SocketServer {
      * @param clientConnectionWorkQueueSize The size of the work client socket connection work queue
      */
     public void startServer(int port, int clientPoolSize, int clientConnectionWorkQueueSize) {
+        startServer(port, clientPoolSize, clientConnectionWorkQueueSize, DEFAULT_CONNECTION_QUANTUM_LINES,
+                DEFAULT_CONNECTION_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Start the socket server and listen on the input port for messages. All messages are processed by a thread pool
+     * that is the size of the input client pool size. Client connections share the thread pool round robin, each
+     * being served at most the input quantum of lines per turn.
+     *
+     * @param port The port to accept socket connections on
+     * @param clientPoolSize The client socket pool size. Any client socket connections beyond the pool size will be
+     *                       place in the work queue.
+     * @param clientConnectionWorkQueueSize The size of the work client socket connection work queue
+     * @param connectionQuantumLines The maximum count of lines a client connection is served per turn
+     * @param connectionIdleTimeout The time in milliseconds a client connection waits for data before giving up
+     *                              its turn
+     */
+    public void startServer(int port, int clientPoolSize, int clientConnectionWorkQueueSize,
+                            int connectionQuantumLines, int connectionIdleTimeout) {
         System.out.println("Starting server");
 
         // Create thread pool executor
         threadPoolExecutor = ThreadUtil.createDaemonExecutor(clientPoolSize,
                 clientConnectionWorkQueueSize, "NewRelic Project Socket Server");
+        connectionScheduler = new ConnectionScheduler(threadPoolExecutor, connectionQuantumLines,
+                connectionIdleTimeout);
 
         try {
-            // Create the number service. Currently using the version of the NumbersService that uses
-            // a Random Access File for keeping track of input numbers
-            numbersService = new NumbersServiceRAFImpl();
+            // Create the number service if one wasn't provided. Defaults to the version of the NumbersService
+            // that uses a Random Access File for keeping track of input numbers
+            if (numbersService == null) {
+                numbersService = new NumbersServiceRAFImpl();
+            }
+
+            // Start the ingest pipeline consumer if there is one
+            if (ingestPipeline != null) {
+                ingestPipeline.start(this::shutdown);
+            }
 
             // Create the server socket
             serverSocket = new ServerSocket(port);
 
             // Set up a thread to print out the status every STATUS_TIMER_DELAY seconds
             statusTimerExecutor = Executors.newSingleThreadScheduledExecutor();
-            statusTimerExecutor.scheduleAtFixedRate(() -> System.out.println(numbersService.getStatus()),
-                    STATUS_TIMER_DELAY, STATUS_TIMER_DELAY, TimeUnit.SECONDS);
+            statusTimerExecutor.scheduleAtFixedRate(() -> {
+                        System.out.println(numbersService.getStatus());
+                        System.out.println(connectionScheduler.getServiceShareReport());
+                    }, STATUS_TIMER_DELAY, STATUS_TIMER_DELAY, TimeUnit.SECONDS);
+
+            // Sample the stats history every STATS_SAMPLE_DELAY seconds
+            statusTimerExecutor.scheduleAtFixedRate(statsHistory::sample,
+                    0, STATS_SAMPLE_DELAY, TimeUnit.SECONDS);
 
             // Loop until the server is stopped
             while(!stopping()) {
+                Socket socket = serverSocket.accept();
+                ingestCounters.incrementConnections();
+                ConnectionAcceptEvent acceptEvent = new ConnectionAcceptEvent();
+                acceptEvent.begin();
+
                 // Pass any server socket connections on to a client worker
-                ClientWorker clientWorker = new ClientWorker(numbersService, this, serverSocket.accept());
-                threadPoolExecutor.execute(clientWorker);
+                ClientWorker clientWorker = new ClientWorker(numbersService, ingestPipeline, connectionScheduler,
+                        this, socket);
+                connectionScheduler.submit(clientWorker);
+
+                acceptEvent.end();
+                if (acceptEvent.shouldCommit()) {
+                    acceptEvent.connectionId = clientWorker.getConnectionId();
+                    acceptEvent.remoteAddress = clientWorker.getRemoteAddress();
+                    acceptEvent.commit();
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -98,6 +218,41 @@ public class SocketServer {
         }
     }
 
+    /**
+     * Get the cumulative socket input counters
+     *
+     * @return The socket input counters
+     */
+    public IngestCounters getIngestCounters() {
+        return ingestCounters;
+    }
+
+    /**
+     * Get the windowed stats history
+     *
+     * @return The stats history
+     */
+    public StatsHistory getStatsHistory() {
+        return statsHistory;
+    }
+
+    /**
+     * Get the current cumulative totals. Never takes the numbers lock.
+     *
+     * @return The current totals
+     */
+    public StatsTotals getTotals() {
+        NumbersService service = numbersService;
+        ConnectionScheduler scheduler = connectionScheduler;
+        return new StatsTotals(
+                service == null ? 0 : service.getUniqueTotal(),
+                service == null ? 0 : service.getDuplicateTotal(),
+                ingestCounters.getInvalidLines(),
+                ingestCounters.getConnections(),
+                scheduler == null ? 0 : scheduler.getOpenConnectionCount(),
+                ingestCounters.getLines());
+    }
+
     /**
      * Check if the server is stopped or not
      *
@@ -113,27 +268,47 @@ public class SocketServer {
     }
 
     /**
-     * Shutdown the socket server. This method closes the server socket and thread pool executors.
+     * Shutdown the socket server. This method closes the server socket and thread pool executors. Only the first
+     * call shuts the server down, later calls return once it has stopped.
      */
     public void shutdown() {
+        ServerShutdownEvent shutdownEvent = new ServerShutdownEvent();
+        shutdownEvent.begin();
         socketServerLock.lock();
         try {
-            // Set stopped to true
+            // Only shut down once. The accept loop and the shutdown hook both call this.
+            if (stopped) {
+                return;
+            }
             stopped = true;
 
             System.out.println("Shutting down server");
 
             // Stop the thread pool executor
             if (threadPoolExecutor != null) {
+                List<Runnable> waitingWorkers = new ArrayList<>();
                 threadPoolExecutor.shutdown();
+                waitingWorkers.addAll(connectionScheduler.shutdown());
                 try {
                     if (!threadPoolExecutor.awaitTermination(30, TimeUnit.SECONDS)) { // TODO use constant
-                        threadPoolExecutor.shutdownNow();
+                        waitingWorkers.addAll(threadPoolExecutor.shutdownNow());
                     }
                 } catch (InterruptedException e) {
-                    threadPoolExecutor.shutdownNow();
+                    waitingWorkers.addAll(threadPoolExecutor.shutdownNow());
                     Thread.currentThread().interrupt();
                 }
+
+                // Close the connections still waiting for a turn, parked or in the work queue
+                for (Runnable waitingWorker : waitingWorkers) {
+                    if (waitingWorker instanceof ClientWorker) {
+                        ((ClientWorker) waitingWorker).abort();
+                    }
+                }
+            }
+
+            // Stop the ingest pipeline once the client workers have published everything
+            if (ingestPipeline != null) {
+                ingestPipeline.stop();
             }
 
             // Stop the status time executor
@@ -158,10 +333,20 @@ public class SocketServer {
                     // TODO throw error
                 }
             }
+
+            // Close the numbers service if it holds open resources
+            if (numbersService instanceof Closeable) {
+                try {
+                    ((Closeable) numbersService).close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
         } finally {
             socketServerLock.unlock();
         }
         System.out.println("Server stopped");
+        shutdownEvent.commit();
 
     }
 }
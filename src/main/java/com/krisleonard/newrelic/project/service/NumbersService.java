@@ -1,6 +1,7 @@
 package com.krisleonard.newrelic.project.service;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 
 public interface NumbersService {
@@ -20,6 +21,11 @@ public interface NumbersService {
      */
     static final int NUMBER_CHARACTER_COUNT = 9;
 
+    /**
+     * The largest number that fits in NUMBER_CHARACTER_COUNT characters
+     */
+    static final int MAX_NUMBER = 999999999;
+
     /**
      * The total character count of a line including the new line character
      */
@@ -40,6 +46,115 @@ public interface NumbersService {
      */
     public void addNumber(final String numberString) throws IOException;
 
+    /**
+     * Asynchronously adds a number to the number.log file and updates counters. The number string is validated
+     * before this method returns, but the duplicate check and the write to the numbers log may still be in flight
+     * when it does. The default implementation delegates to {@link #addNumber(String)} and so completes before
+     * returning.
+     *
+     * @param numberString The number to possibly add to the number log
+     * @return A future that is completed once the number has been checked and, if unique, written to the number log.
+     * The future is completed exceptionally with an IOException when there is an IO issue with the numbers log file.
+     * @throws IllegalArgumentException When the number string is not a valid nine digit number
+     */
+    public default CompletableFuture<Void> addNumberAsync(final String numberString) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            addNumber(numberString);
+            future.complete(null);
+        } catch (IOException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Asynchronously adds an already parsed number the caller has checked with {@link #addKnownDuplicate(int)}, so
+     * it is neither parsed nor checked against the known numbers again. Otherwise the same as
+     * {@link #addNumberAsync(String)}. The default implementation delegates to {@link #addNumbers(int[], int)} and
+     * so completes before returning.
+     *
+     * @param number The parsed number that isn't a known duplicate
+     * @return A future that is completed once the number has been checked and, if unique, written to the number log.
+     * The future is completed exceptionally with an IOException when there is an IO issue with the numbers log file.
+     */
+    public default CompletableFuture<Void> addNumberAsync(final int number) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            addNumbers(new int[] {number}, 1);
+            future.complete(null);
+        } catch (IOException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Adds a batch of already parsed numbers to the number.log file and updates counters. Each number is handled
+     * the same way as {@link #addNumber(String)} handles its nine character number string.
+     *
+     * @param numbers The array holding the numbers to add
+     * @param count The count of numbers to add from the start of the array
+     * @throws IOException When there is an IO issue with the numbers log file.
+     * @throws IllegalArgumentException When a number is negative or has more than nine digits
+     */
+    public void addNumbers(final int[] numbers, final int count) throws IOException;
+
+    /**
+     * Apply a batch of numbers replicated from another numbers service. Numbers not yet in the numbers log are
+     * written and counted as unique, but numbers already there are skipped without being counted as duplicates, as
+     * a replication catch up resends numbers the follower already has. The default implementation is for services
+     * that don't keep a numbers log of their own.
+     *
+     * @param numbers The array holding the numbers to apply
+     * @param count The count of numbers to apply from the start of the array
+     * @throws IOException When there is an IO issue with the numbers log file.
+     * @throws IllegalArgumentException When a number is negative or has more than nine digits
+     * @throws UnsupportedOperationException When the service doesn't keep a numbers log
+     */
+    public default void applyReplicated(final int[] numbers, final int count) throws IOException {
+        throw new UnsupportedOperationException("Replicated numbers are not supported by " + getClass());
+    }
+
+    /**
+     * Count a number as a duplicate if it is already known to be in the numbers log. Known numbers are kept in a
+     * lock-free set, so a known duplicate never takes the numbers lock or touches the numbers log file. The default
+     * implementation is for services that don't know which numbers have been received.
+     *
+     * @param number The number
+     * @return True if the number is a known duplicate and has been counted. False if it still has to be added.
+     */
+    public default boolean addKnownDuplicate(final int number) {
+        return false;
+    }
+
+    /**
+     * Set the listener told about each unique number once it has been written to the numbers log. The default
+     * implementation is for services that don't keep a numbers log of their own.
+     *
+     * @param uniqueNumberListener The listener, or null for no listener
+     * @throws UnsupportedOperationException When the service doesn't keep a numbers log
+     */
+    public default void setUniqueNumberListener(final UniqueNumberListener uniqueNumberListener) {
+        throw new UnsupportedOperationException("Unique number listeners are not supported by " + getClass());
+    }
+
+    /**
+     * Get the total count of unique numbers received. Unlike {@link #getStatus()} this never takes the numbers lock
+     * and never resets a counter, so it can be called at any rate.
+     *
+     * @return The total count of unique numbers received
+     */
+    public int getUniqueTotal();
+
+    /**
+     * Get the total count of duplicate numbers received. Unlike {@link #getStatus()} this never takes the numbers
+     * lock and never resets a counter, so it can be called at any rate.
+     *
+     * @return The total count of duplicate numbers received
+     */
+    public long getDuplicateTotal();
+
     /**
      * Get the status string containing the number of newly received unique numbers,
      * the number of newly received duplicates, and the total count of unique numbers received.
@@ -0,0 +1,16 @@
+package com.krisleonard.newrelic.project.service;
+
+/**
+ * Listener told about each unique number a numbers service writes to its numbers log
+ */
+@FunctionalInterface
+public interface UniqueNumberListener {
+
+    /**
+     * Called once a unique number has been written to the numbers log. Called on the thread that added the number,
+     * possibly while the numbers lock is held, so implementations must be quick and must never block.
+     *
+     * @param number The unique number
+     */
+    void uniqueNumberAdded(int number);
+}
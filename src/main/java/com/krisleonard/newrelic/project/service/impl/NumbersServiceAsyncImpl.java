@@ -0,0 +1,444 @@
+package com.krisleonard.newrelic.project.service.impl;
+
+import com.krisleonard.newrelic.project.service.NumbersService;
+import com.krisleonard.newrelic.project.service.UniqueNumberListener;
+import com.krisleonard.newrelic.project.util.ConcurrentBitSet;
+import com.krisleonard.newrelic.project.util.ThreadUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A service class for adding numbers to a numbers log file using an AsynchronousFileChannel. Unlike
+ * NumbersServiceRAFImpl there is no global lock around the file IO, so reads and writes for different numbers
+ * can be in flight at the same time. Operations on the same number are chained so the read and write of a
+ * number's position in the log never interleave. The file IO runs on a fixed size pool of daemon threads, so deep
+ * queues of in flight numbers wait in the pool's work queue instead of each getting a thread.
+ */
+public class NumbersServiceAsyncImpl implements NumbersService, Closeable {
+
+    /**
+     * An already completed future
+     */
+    private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+
+    /**
+     * The count of threads running the numbers log file IO
+     */
+    private static final int FILE_IO_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The numbers known to be in the numbers log. Set once a number has been written or found in the numbers log.
+     */
+    private final ConcurrentBitSet loggedNumbers = new ConcurrentBitSet(MAX_NUMBER);
+
+    /**
+     * The total count of known duplicates counted without any file IO
+     */
+    private final LongAdder knownDuplicateCount = new LongAdder();
+
+    /**
+     * The count of known duplicates included in the last status report
+     */
+    private final AtomicLong reportedKnownDuplicateCount = new AtomicLong();
+
+    /**
+     * The in flight operations keyed by number. Used to order operations on the same number.
+     */
+    private final ConcurrentHashMap<Integer, CompletableFuture<Void>> pendingNumbers = new ConcurrentHashMap<>();
+
+    /**
+     * The current count of newly received unique numbers since the last status report
+     */
+    private final AtomicInteger receivedUniqueCount = new AtomicInteger();
+
+    /**
+     * The total unique number count
+     */
+    private final AtomicInteger totalUniqueCount = new AtomicInteger();
+
+    /**
+     * The current count of newly received duplicate numbers since the last status report
+     */
+    private final AtomicInteger receivedNewDupes = new AtomicInteger();
+
+    /**
+     * The total duplicate number count
+     */
+    private final AtomicLong totalDuplicateCount = new AtomicLong();
+
+    /**
+     * The executor running the numbers log file IO and its completion handlers. The work queue is unbounded
+     * because completion handlers submit the next read or write from the pool's own threads, so waiting for
+     * room in the queue could deadlock the pool.
+     */
+    private final ExecutorService fileIoExecutor =
+            ThreadUtil.createDaemonExecutor(FILE_IO_POOL_SIZE, Integer.MAX_VALUE, "NewRelic Project Numbers Log IO");
+
+    /**
+     * The asynchronous file channel for the numbers log. Kept open for the life of the service.
+     */
+    private final AsynchronousFileChannel numbersLogFileChannel;
+
+    /**
+     * The listener told about each unique number written to the numbers log
+     */
+    private volatile UniqueNumberListener uniqueNumberListener = null;
+
+    /**
+     * Default constructor that deletes the numbers log file if it exists, recreates it and opens it for
+     * asynchronous reading and writing.
+     *
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    public NumbersServiceAsyncImpl() throws IOException {
+        this(Paths.get(NUMBERS_LOG_FILE_NAME));
+    }
+
+    /**
+     * Constructor that deletes the numbers log file at the input path if it exists, recreates it and opens it for
+     * asynchronous reading and writing.
+     *
+     * @param numbersLogPath The path of the numbers log file
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    public NumbersServiceAsyncImpl(final Path numbersLogPath) throws IOException {
+        this(numbersLogPath, false);
+    }
+
+    /**
+     * Constructor for a numbers log file at the input path. If the existing numbers log is preserved the unique
+     * total is recounted from it, otherwise the file is deleted if it exists and recreated. The file is then opened
+     * for asynchronous reading and writing.
+     *
+     * @param numbersLogPath The path of the numbers log file
+     * @param preserveNumbersLog If an existing numbers log file should be kept
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    public NumbersServiceAsyncImpl(final Path numbersLogPath, final boolean preserveNumbersLog) throws IOException {
+        if (preserveNumbersLog && Files.exists(numbersLogPath)) {
+            NumbersServiceRAFImpl.readNumbersLog(numbersLogPath, number -> {
+                loggedNumbers.set(number);
+                totalUniqueCount.incrementAndGet();
+            });
+            System.out.println("Recovered " + totalUniqueCount.get() + " unique numbers from numbers log");
+        } else {
+            Files.deleteIfExists(numbersLogPath);
+
+            // Create the file
+            Files.createFile(numbersLogPath);
+        }
+
+        numbersLogFileChannel = AsynchronousFileChannel.open(numbersLogPath,
+                EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE), fileIoExecutor);
+
+        System.out.println("Numbers log file path: " + numbersLogPath.toFile().getAbsolutePath());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUniqueNumberListener(final UniqueNumberListener uniqueNumberListener) {
+        this.uniqueNumberListener = uniqueNumberListener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addKnownDuplicate(final int number) {
+        if (loggedNumbers.get(number)) {
+            knownDuplicateCount.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addNumber(final String numberString) throws IOException {
+        try {
+            addNumberAsync(numberString).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while adding number: " + numberString);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Error adding number: " + numberString, ex.getCause());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * All numbers in the batch are in flight at the same time.
+     */
+    public void addNumbers(final int[] numbers, final int count) throws IOException {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            futures[i] = addNumberAsync(NumbersServiceRAFImpl.convertToNumberString(numbers[i]));
+        }
+        awaitAll(futures);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * All numbers in the batch that aren't known to be in the numbers log are in flight at the same time.
+     */
+    @Override
+    public void applyReplicated(final int[] numbers, final int count) throws IOException {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            String numberString = NumbersServiceRAFImpl.convertToNumberString(numbers[i]);
+            futures[i] = loggedNumbers.get(numbers[i]) ? COMPLETED : queueNumber(numbers[i], numberString, true);
+        }
+        awaitAll(futures);
+    }
+
+    /**
+     * Wait for a batch of adds to complete
+     *
+     * @param futures The futures of the adds
+     * @throws IOException When an add failed
+     */
+    private static void awaitAll(final CompletableFuture<?>[] futures) throws IOException {
+        try {
+            CompletableFuture.allOf(futures).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while adding numbers");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Error adding numbers", ex.getCause());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> addNumberAsync(final String numberString) {
+        // Convert the input number string to an int. Invalid input is rejected before anything is queued.
+        final int number = NumbersServiceRAFImpl.convertToInteger(numberString);
+
+        // Known duplicates skip the file IO
+        if (addKnownDuplicate(number)) {
+            return COMPLETED;
+        }
+        return queueNumber(number, numberString, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> addNumberAsync(final int number) {
+        return queueNumber(number, NumbersServiceRAFImpl.convertToNumberString(number), false);
+    }
+
+    /**
+     * Check and write a number once any earlier operation on the same number has finished
+     *
+     * @param number The number
+     * @param numberString The nine character number string
+     * @param replicated If the number was replicated, so finding it already in the numbers log isn't a duplicate
+     * @return A future completed once the number has been checked and, if needed, written
+     */
+    private CompletableFuture<Void> queueNumber(final int number, final String numberString,
+                                                final boolean replicated) {
+        // Register this operation as the latest for the number and run it after any earlier one finishes
+        final CompletableFuture<Void> operation = new CompletableFuture<>();
+        CompletableFuture<Void> previous = pendingNumbers.put(number, operation);
+        CompletableFuture<Void> predecessor = previous == null ? COMPLETED : previous.handle((result, ex) -> null);
+
+        predecessor.thenCompose(ignored -> checkAndWriteNumber(number, numberString, replicated))
+                .whenComplete((result, ex) -> {
+                    pendingNumbers.remove(number, operation);
+                    if (ex == null) {
+                        operation.complete(null);
+                    } else {
+                        operation.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+                    }
+                });
+
+        return operation;
+    }
+
+    /**
+     * Read the number's line from the numbers log and write the number to it if it is not already there.
+     *
+     * @param number The number
+     * @param numberString The nine character number string
+     * @param replicated If the number was replicated, so finding it already in the numbers log isn't a duplicate
+     * @return A future completed once the number has been checked and, if needed, written
+     */
+    private CompletableFuture<Void> checkAndWriteNumber(final int number, final String numberString,
+                                                        final boolean replicated) {
+        final long position = number * TOTAL_LINE_CHARACTER_COUNT;
+        final ByteBuffer numberByteBuffer = ByteBuffer.allocate((int) TOTAL_LINE_CHARACTER_COUNT);
+
+        return read(numberByteBuffer, position).thenCompose(ignored -> {
+            // Turn read bytes into a string and trim
+            String readString = StringUtils.trim(new String(numberByteBuffer.array(), StandardCharsets.UTF_8));
+
+            // If the number was read the number exists already
+            if (numberString.equals(readString)) {
+                loggedNumbers.set(number);
+                if (!replicated) {
+                    receivedNewDupes.incrementAndGet();
+                    totalDuplicateCount.incrementAndGet();
+                }
+                return COMPLETED;
+            }
+
+            // Add the number and new line to the buffer and flip it for output to the file
+            numberByteBuffer.clear();
+            numberByteBuffer.put((numberString + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            numberByteBuffer.flip();
+
+            return write(numberByteBuffer, position).thenRun(() -> {
+                loggedNumbers.set(number);
+                totalUniqueCount.incrementAndGet();
+                if (!replicated) {
+                    receivedUniqueCount.incrementAndGet();
+                }
+
+                // Tell the listener about the new unique number
+                UniqueNumberListener listener = uniqueNumberListener;
+                if (listener != null) {
+                    listener.uniqueNumberAdded(number);
+                }
+            });
+        });
+    }
+
+    /**
+     * Read from the numbers log at the position until the buffer is full or the end of the file is reached.
+     *
+     * @param buffer The buffer to read into
+     * @param position The file position to start reading from
+     * @return A future completed when the read is done
+     */
+    private CompletableFuture<Void> read(final ByteBuffer buffer, final long position) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        numbersLogFileChannel.read(buffer, position, future,
+                new CompletionHandler<Integer, CompletableFuture<Void>>() {
+                    @Override
+                    public void completed(Integer bytesRead, CompletableFuture<Void> readFuture) {
+                        if (bytesRead == -1 || !buffer.hasRemaining()) {
+                            readFuture.complete(null);
+                        } else {
+                            numbersLogFileChannel.read(buffer, position + buffer.position(), readFuture, this);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Throwable ex, CompletableFuture<Void> readFuture) {
+                        readFuture.completeExceptionally(ex);
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * Write the remaining bytes of the buffer to the numbers log at the position.
+     *
+     * @param buffer The buffer to write
+     * @param position The file position to start writing at
+     * @return A future completed when the whole buffer is written
+     */
+    private CompletableFuture<Void> write(final ByteBuffer buffer, final long position) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        numbersLogFileChannel.write(buffer, position, future,
+                new CompletionHandler<Integer, CompletableFuture<Void>>() {
+                    @Override
+                    public void completed(Integer bytesWritten, CompletableFuture<Void> writeFuture) {
+                        if (!buffer.hasRemaining()) {
+                            writeFuture.complete(null);
+                        } else {
+                            numbersLogFileChannel.write(buffer, position + buffer.position(), writeFuture, this);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Throwable ex, CompletableFuture<Void> writeFuture) {
+                        writeFuture.completeExceptionally(ex);
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getUniqueTotal() {
+        return totalUniqueCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDuplicateTotal() {
+        return totalDuplicateCount.get() + knownDuplicateCount.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getStatus() {
+        // Include the known duplicates counted since the last report
+        long knownDuplicates = knownDuplicateCount.sum();
+        long newDupes = receivedNewDupes.getAndSet(0) + knownDuplicates
+                - reportedKnownDuplicateCount.getAndSet(knownDuplicates);
+        return String.format(STATUS_STRING, receivedUniqueCount.getAndSet(0), newDupes, totalUniqueCount.get());
+    }
+
+    /**
+     * Close the numbers log file channel and stop the file IO threads.
+     *
+     * @throws IOException When there is an IO issue closing the numbers log file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            numbersLogFileChannel.close();
+        } finally {
+            fileIoExecutor.shutdown();
+            try {
+                if (!fileIoExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    fileIoExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                fileIoExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
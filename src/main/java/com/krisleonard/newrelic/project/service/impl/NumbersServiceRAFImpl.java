@@ -1,6 +1,12 @@
 package com.krisleonard.newrelic.project.service.impl;
 
+import com.krisleonard.newrelic.project.jfr.AddNumberEvent;
+import com.krisleonard.newrelic.project.jfr.NumbersFileReadEvent;
+import com.krisleonard.newrelic.project.jfr.NumbersFileWriteEvent;
+import com.krisleonard.newrelic.project.jfr.NumbersLockWaitEvent;
 import com.krisleonard.newrelic.project.service.NumbersService;
+import com.krisleonard.newrelic.project.service.UniqueNumberListener;
+import com.krisleonard.newrelic.project.util.ConcurrentBitSet;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
@@ -11,7 +17,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -22,11 +30,25 @@ import java.util.concurrent.locks.ReentrantLock;
 public class NumbersServiceRAFImpl implements NumbersService {
 
     /**
-     * The set of received duplicate numbers.
-     * TODO If a large number of duplicates are received then the code should be changed just to keep a count of dupes
-     * TODO as this set will grow too large.
+     * The count of lines read at once when reading the whole numbers log
      */
-    private HashSet<String> duplicateNumbers = new HashSet<>();
+    private static final int NUMBERS_LOG_READ_LINES = 64 * 1024;
+
+    /**
+     * The numbers known to be in the numbers log. Set once a number has been written or found in the numbers log,
+     * and read without the numbers lock to count known duplicates.
+     */
+    private final ConcurrentBitSet loggedNumbers = new ConcurrentBitSet(MAX_NUMBER);
+
+    /**
+     * The total count of known duplicates counted without the numbers lock
+     */
+    private final LongAdder knownDuplicateCount = new LongAdder();
+
+    /**
+     * The count of known duplicates included in the last status report
+     */
+    private long reportedKnownDuplicateCount = 0;
 
     /**
      * The current count of newly received unique numbers since the last status report
@@ -34,27 +56,78 @@ public class NumbersServiceRAFImpl implements NumbersService {
     private int receivedUniqueCount = 0;
 
     /**
-     * The total unique number count
+     * The total unique number count. Only written while holding the numbers lock, but volatile so the total can
+     * be read without the lock.
      */
-    private int totalUniqueCount = 0;
+    private volatile int totalUniqueCount = 0;
 
     /**
      * The current count of newly received duplicate numbers since the last status report
      */
     private int receivedNewDupes = 0;
 
+    /**
+     * The total duplicate number count. Only written while holding the numbers lock, but volatile so the total can
+     * be read without the lock.
+     */
+    private volatile long totalDuplicateCount = 0;
+
     /**
      * The lock used to prevent concurrency issues when adding numbers and getting the status
      */
     private final Lock numbersLock = new ReentrantLock();
 
+    /**
+     * The path of the numbers log file
+     */
+    private final Path numbersLogPath;
+
+    /**
+     * The listener told about each unique number written to the numbers log
+     */
+    private volatile UniqueNumberListener uniqueNumberListener = null;
+
     /**
      * Default constructor that deletes the numbers log file if it exists and recreates it.
      *
      * @throws IOException When there is an IO issue with the numbers log file
      */
     public NumbersServiceRAFImpl() throws IOException {
-        Path numbersLogPath = Paths.get(NUMBERS_LOG_FILE_NAME);
+        this(Paths.get(NUMBERS_LOG_FILE_NAME));
+    }
+
+    /**
+     * Constructor that deletes the numbers log file at the input path if it exists and recreates it.
+     *
+     * @param numbersLogPath The path of the numbers log file
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    public NumbersServiceRAFImpl(final Path numbersLogPath) throws IOException {
+        this(numbersLogPath, false);
+    }
+
+    /**
+     * Constructor for a numbers log file at the input path. If the existing numbers log is preserved the unique
+     * total is recounted from it, otherwise the file is deleted if it exists and recreated.
+     *
+     * @param numbersLogPath The path of the numbers log file
+     * @param preserveNumbersLog If an existing numbers log file should be kept
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    public NumbersServiceRAFImpl(final Path numbersLogPath, final boolean preserveNumbersLog) throws IOException {
+        this.numbersLogPath = numbersLogPath;
+        if (preserveNumbersLog && Files.exists(numbersLogPath)) {
+            int[] uniqueCount = new int[1];
+            readNumbersLog(numbersLogPath, number -> {
+                loggedNumbers.set(number);
+                uniqueCount[0]++;
+            });
+            totalUniqueCount = uniqueCount[0];
+            System.out.println("Recovered " + totalUniqueCount + " unique numbers from numbers log file path: "
+                    + numbersLogPath.toFile().getAbsolutePath());
+            return;
+        }
+
         boolean deletedFile = Files.deleteIfExists(numbersLogPath);
         if(!deletedFile) {
             // Do nothing. Log that the file didn't exist
@@ -89,82 +162,400 @@ public class NumbersServiceRAFImpl implements NumbersService {
         return StringUtils.isBlank(leadingZeroStrippedNumber) ? 0 : Integer.parseInt(leadingZeroStrippedNumber);
     }
 
+    /**
+     * Converts the input int to its nine character, zero padded number string.
+     *
+     * @param number The number to convert
+     * @return The nine character number string
+     * @throws IllegalArgumentException When the number is negative or has more than nine digits
+     */
+    public static String convertToNumberString(final int number) throws IllegalArgumentException {
+        if (number < 0 || number > MAX_NUMBER) {
+            throw new IllegalArgumentException("Invalid number: " + number);
+        }
+
+        // Fill the digits in from the right so leading positions stay zero
+        char[] digits = new char[NUMBER_CHARACTER_COUNT];
+        int remaining = number;
+        for (int i = NUMBER_CHARACTER_COUNT - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Read every number in a numbers log file in ascending order. A number is in the log when the first byte of its
+     * line has been written.
+     *
+     * @param numbersLogPath The path of the numbers log file
+     * @param numberConsumer The consumer given each number in the log
+     * @throws IOException When there is an IO issue reading the numbers log file
+     */
+    public static void readNumbersLog(final Path numbersLogPath, final IntConsumer numberConsumer)
+            throws IOException {
+        readNumbersLog(numbersLogPath, 0, numberConsumer, chunkEnd -> { });
+    }
+
+    /**
+     * Read every number in a numbers log file from the first number on in ascending order, telling the chunk
+     * listener where each chunk of lines ends before the chunk is read. A sparse log can hold long runs of lines
+     * without numbers, so the chunk listener lets a caller keep doing periodic work while no numbers are found.
+     * Numbers at or past a chunk's end are still to be read when the chunk listener is told about it.
+     *
+     * @param numbersLogPath The path of the numbers log file
+     * @param firstNumber The number to start reading from
+     * @param numberConsumer The consumer given each number in the log
+     * @param chunkListener Given the number just past each chunk of lines before the chunk is read
+     * @return The number just past the last line read, which is past every number in the log when it was read
+     * @throws IOException When there is an IO issue reading the numbers log file
+     */
+    public static int readNumbersLog(final Path numbersLogPath, final int firstNumber,
+                                     final IntConsumer numberConsumer, final IntConsumer chunkListener)
+            throws IOException {
+        try (FileChannel numberLogFileChannel = FileChannel.open(numbersLogPath, StandardOpenOption.READ)) {
+            ByteBuffer linesBuffer = ByteBuffer.allocate((int) (NUMBERS_LOG_READ_LINES * TOTAL_LINE_CHARACTER_COUNT));
+            long position = firstNumber * TOTAL_LINE_CHARACTER_COUNT;
+            int bytesRead = 0;
+            while (bytesRead != -1) {
+                int chunkFirstNumber = (int) (position / TOTAL_LINE_CHARACTER_COUNT);
+                chunkListener.accept(chunkFirstNumber + NUMBERS_LOG_READ_LINES);
+
+                // Fill the buffer with whole lines unless the end of the file is reached
+                linesBuffer.clear();
+                do {
+                    bytesRead = numberLogFileChannel.read(linesBuffer, position + linesBuffer.position());
+                } while (bytesRead != -1 && linesBuffer.hasRemaining());
+
+                // Lines never written are holes in the file and read as zero bytes
+                int lineCount = (int) (linesBuffer.position() / TOTAL_LINE_CHARACTER_COUNT);
+                for (int line = 0; line < lineCount; line++) {
+                    if (linesBuffer.get((int) (line * TOTAL_LINE_CHARACTER_COUNT)) != 0) {
+                        numberConsumer.accept(chunkFirstNumber + line);
+                    }
+                }
+                position += lineCount * TOTAL_LINE_CHARACTER_COUNT;
+            }
+            return (int) (position / TOTAL_LINE_CHARACTER_COUNT);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUniqueNumberListener(final UniqueNumberListener uniqueNumberListener) {
+        this.uniqueNumberListener = uniqueNumberListener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addKnownDuplicate(final int number) {
+        if (loggedNumbers.get(number)) {
+            knownDuplicateCount.increment();
+            return true;
+        }
+        return false;
+    }
+
     /**
      * {@inheritDoc}
      */
     public void addNumber(final String numberString) throws IOException {
-        numbersLock.lock();
         // Convert the input number string to an int
         int number = convertToInteger(numberString);
-        try {
-            // Check if the existing dupes set already has the number string so we can skip file IO
-            if (duplicateNumbers.contains(numberString)) {
-                receivedNewDupes++;
-                return;
-            }
 
-            // TODO one change could be to break out the reading and writing in to seperate methods
-            // Open a read/write random access file FileChannel for the numbers log
-            try (FileChannel numberLogFileChannel =
-                         (FileChannel.open(Paths.get(NUMBERS_LOG_FILE_NAME),
-                                 StandardOpenOption.READ, StandardOpenOption.WRITE))) {
-                // Read number string plus system line separator character bytes from the file at the number position
-                ByteBuffer numberByteBuffer = ByteBuffer.allocate(numberString.length()
-                        + System.lineSeparator().length());
+        // Known duplicates skip the numbers lock and the file IO
+        if (addKnownDuplicate(number)) {
+            return;
+        }
+        addUnknownNumber(number, numberString);
+    }
 
-                // Set the position to number times line size
-                numberLogFileChannel.position(number * TOTAL_LINE_CHARACTER_COUNT);
+    /**
+     * {@inheritDoc}
+     *
+     * Completes before returning.
+     */
+    @Override
+    public CompletableFuture<Void> addNumberAsync(final int number) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            addUnknownNumber(number, convertToNumberString(number));
+            future.complete(null);
+        } catch (IOException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
 
-                // Read line
-                int numberBytesRead = 0;
-                do {
-                    numberBytesRead = numberLogFileChannel.read(numberByteBuffer);
-                } while (numberBytesRead != -1 && numberByteBuffer.hasRemaining());
+    /**
+     * Add a number that isn't a known duplicate, taking the numbers lock and opening the numbers log for it
+     *
+     * @param number The number
+     * @param numberString The nine character number string
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    private void addUnknownNumber(final int number, final String numberString) throws IOException {
+        lockNumbers(1);
+        AddNumberEvent addNumberEvent = new AddNumberEvent();
+        addNumberEvent.begin();
+        boolean unique = false;
+        try {
+            try (FileChannel numberLogFileChannel = openNumbersLog()) {
+                unique = addNumber(numberLogFileChannel, number, numberString,
+                        ByteBuffer.allocate((int) TOTAL_LINE_CHARACTER_COUNT));
+            }
+        } finally {
+            numbersLock.unlock();
+            commitAddNumberEvent(addNumberEvent, number, unique);
+        }
+    }
 
-                // Turn read bytes into a string and trim
-                String readString = StringUtils.trim(new String(numberByteBuffer.array(), StandardCharsets.UTF_8));
+    /**
+     * {@inheritDoc}
+     *
+     * The numbers lock is taken and the numbers log opened once for the whole batch.
+     */
+    public void addNumbers(final int[] numbers, final int count) throws IOException {
+        lockNumbers(count);
+        try (FileChannel numberLogFileChannel = openNumbersLog()) {
+            ByteBuffer numberByteBuffer = ByteBuffer.allocate((int) TOTAL_LINE_CHARACTER_COUNT);
+            for (int i = 0; i < count; i++) {
+                AddNumberEvent addNumberEvent = new AddNumberEvent();
+                addNumberEvent.begin();
+                String numberString = convertToNumberString(numbers[i]);
 
-                // If any bytes are read the number exists already
-                if (numberString.equals(readString)) {
-                    // Update duplicate numbers hash set
-                    duplicateNumbers.add(numberString);
+                // Check if the number is already known to be in the numbers log so we can skip file IO
+                boolean unique = false;
+                if (loggedNumbers.get(numbers[i])) {
                     receivedNewDupes++;
-                    return;
+                    totalDuplicateCount++;
+                } else {
+                    numberByteBuffer.clear();
+                    unique = addNumber(numberLogFileChannel, numbers[i], numberString, numberByteBuffer);
                 }
+                commitAddNumberEvent(addNumberEvent, numbers[i], unique);
+            }
+        } finally {
+            numbersLock.unlock();
+        }
+    }
 
-                // Reset the buffer
-                numberByteBuffer.clear();
-
-                // Add the number and new line to the buffer
-                numberByteBuffer.put((numberString + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
-
-                // flip byte buffer for output to file
-                numberByteBuffer.flip();
-                // Write number to file at same position as number
-                numberLogFileChannel.position(number * TOTAL_LINE_CHARACTER_COUNT);
-                while (numberByteBuffer.hasRemaining()) {
-                    numberLogFileChannel.write(numberByteBuffer);
+    /**
+     * {@inheritDoc}
+     *
+     * The numbers lock is taken and the numbers log opened once for the whole batch.
+     */
+    @Override
+    public void applyReplicated(final int[] numbers, final int count) throws IOException {
+        lockNumbers(count);
+        try (FileChannel numberLogFileChannel = openNumbersLog()) {
+            ByteBuffer numberByteBuffer = ByteBuffer.allocate((int) TOTAL_LINE_CHARACTER_COUNT);
+            for (int i = 0; i < count; i++) {
+                if (loggedNumbers.get(numbers[i])) {
+                    continue;
                 }
 
-                // Update counters
-                totalUniqueCount++;
-                receivedUniqueCount++;
+                String numberString = convertToNumberString(numbers[i]);
+                numberByteBuffer.clear();
+                if (!readLoggedNumber(numberLogFileChannel, numbers[i], numberString, numberByteBuffer)) {
+                    writeNumber(numberLogFileChannel, numbers[i], numberString, numberByteBuffer);
+                    totalUniqueCount++;
+                }
             }
         } finally {
             numbersLock.unlock();
         }
     }
 
+    /**
+     * Acquire the numbers lock, recording a JFR event if the wait is long
+     *
+     * @param batchSize The count of numbers the lock is being acquired for
+     */
+    private void lockNumbers(final int batchSize) {
+        NumbersLockWaitEvent lockWaitEvent = new NumbersLockWaitEvent();
+        lockWaitEvent.begin();
+        numbersLock.lock();
+        lockWaitEvent.end();
+        if (lockWaitEvent.shouldCommit()) {
+            lockWaitEvent.batchSize = batchSize;
+            lockWaitEvent.commit();
+        }
+    }
+
+    /**
+     * End and commit an add number JFR event if it is enabled and long enough to record
+     *
+     * @param addNumberEvent The started event
+     * @param number The number that was added
+     * @param unique If the number was unique
+     */
+    private static void commitAddNumberEvent(final AddNumberEvent addNumberEvent, final int number,
+                                             final boolean unique) {
+        addNumberEvent.end();
+        if (addNumberEvent.shouldCommit()) {
+            addNumberEvent.number = number;
+            addNumberEvent.unique = unique;
+            addNumberEvent.commit();
+        }
+    }
+
+    /**
+     * Open a read/write random access file FileChannel for the numbers log
+     *
+     * @return The numbers log file channel
+     * @throws IOException When there is an IO issue opening the numbers log file
+     */
+    private FileChannel openNumbersLog() throws IOException {
+        return FileChannel.open(numbersLogPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Read the number's line from the numbers log and write the number to it if it is not already there. The
+     * numbers lock must be held by the caller.
+     *
+     * @param numberLogFileChannel The open numbers log file channel
+     * @param number The number
+     * @param numberString The nine character number string
+     * @param numberByteBuffer A cleared buffer with room for one line of the numbers log
+     * @return True if the number was unique and written. False if it was a duplicate.
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    private boolean addNumber(final FileChannel numberLogFileChannel, final int number, final String numberString,
+                              final ByteBuffer numberByteBuffer) throws IOException {
+        if (readLoggedNumber(numberLogFileChannel, number, numberString, numberByteBuffer)) {
+            receivedNewDupes++;
+            totalDuplicateCount++;
+            return false;
+        }
+
+        writeNumber(numberLogFileChannel, number, numberString, numberByteBuffer);
+        totalUniqueCount++;
+        receivedUniqueCount++;
+        return true;
+    }
+
+    /**
+     * Read the number's line from the numbers log and check if the number is already there. The numbers lock must
+     * be held by the caller.
+     *
+     * @param numberLogFileChannel The open numbers log file channel
+     * @param number The number
+     * @param numberString The nine character number string
+     * @param numberByteBuffer A cleared buffer with room for one line of the numbers log
+     * @return True if the number is in the numbers log
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    private boolean readLoggedNumber(final FileChannel numberLogFileChannel, final int number,
+                                     final String numberString, final ByteBuffer numberByteBuffer)
+            throws IOException {
+        NumbersFileReadEvent fileReadEvent = new NumbersFileReadEvent();
+        fileReadEvent.begin();
+
+        // Set the position to number times line size
+        numberLogFileChannel.position(number * TOTAL_LINE_CHARACTER_COUNT);
+
+        // Read number string plus system line separator character bytes from the file at the number position
+        int numberBytesRead = 0;
+        do {
+            numberBytesRead = numberLogFileChannel.read(numberByteBuffer);
+        } while (numberBytesRead != -1 && numberByteBuffer.hasRemaining());
+
+        fileReadEvent.end();
+        if (fileReadEvent.shouldCommit()) {
+            fileReadEvent.number = number;
+            fileReadEvent.commit();
+        }
+
+        // Turn read bytes into a string and trim
+        String readString = StringUtils.trim(new String(numberByteBuffer.array(), StandardCharsets.UTF_8));
+
+        // If any bytes are read the number exists already
+        if (numberString.equals(readString)) {
+            // Remember the number is in the numbers log
+            loggedNumbers.set(number);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write the number to its line of the numbers log and tell the listener about it. The numbers lock must be held
+     * by the caller.
+     *
+     * @param numberLogFileChannel The open numbers log file channel
+     * @param number The number
+     * @param numberString The nine character number string
+     * @param numberByteBuffer A buffer with room for one line of the numbers log
+     * @throws IOException When there is an IO issue with the numbers log file
+     */
+    private void writeNumber(final FileChannel numberLogFileChannel, final int number, final String numberString,
+                             final ByteBuffer numberByteBuffer) throws IOException {
+        NumbersFileWriteEvent fileWriteEvent = new NumbersFileWriteEvent();
+        fileWriteEvent.begin();
+
+        // Reset the buffer
+        numberByteBuffer.clear();
+
+        // Add the number and new line to the buffer
+        numberByteBuffer.put((numberString + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+
+        // flip byte buffer for output to file
+        numberByteBuffer.flip();
+        // Write number to file at same position as number
+        numberLogFileChannel.position(number * TOTAL_LINE_CHARACTER_COUNT);
+        while (numberByteBuffer.hasRemaining()) {
+            numberLogFileChannel.write(numberByteBuffer);
+        }
+
+        fileWriteEvent.end();
+        if (fileWriteEvent.shouldCommit()) {
+            fileWriteEvent.number = number;
+            fileWriteEvent.commit();
+        }
+
+        // Remember the number is in the numbers log
+        loggedNumbers.set(number);
+
+        // Tell the listener about the new unique number
+        UniqueNumberListener listener = uniqueNumberListener;
+        if (listener != null) {
+            listener.uniqueNumberAdded(number);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getUniqueTotal() {
+        return totalUniqueCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDuplicateTotal() {
+        return totalDuplicateCount + knownDuplicateCount.sum();
+    }
+
     /**
      * {@inheritDoc}
      */
     public String getStatus() {
         numbersLock.lock();
         try {
+            // Include the known duplicates counted without the lock since the last report
+            long knownDuplicates = knownDuplicateCount.sum();
+            long newDupes = receivedNewDupes + knownDuplicates - reportedKnownDuplicateCount;
 
-            String status = String.format(STATUS_STRING, receivedUniqueCount, receivedNewDupes, totalUniqueCount);
+            String status = String.format(STATUS_STRING, receivedUniqueCount, newDupes, totalUniqueCount);
             receivedUniqueCount = 0;
             receivedNewDupes = 0;
+            reportedKnownDuplicateCount = knownDuplicates;
             return status;
         } finally {
             numbersLock.unlock();
@@ -0,0 +1,171 @@
+package com.krisleonard.newrelic.project.service.impl;
+
+import com.krisleonard.newrelic.project.router.Backend;
+import com.krisleonard.newrelic.project.router.ShardStrategy;
+import com.krisleonard.newrelic.project.service.NumbersService;
+import com.krisleonard.newrelic.project.stats.StatsTotals;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A numbers service that routes each number to one of several backend socket servers by key range or hash.
+ * Numbers are queued on pipelined backend connections, so adding a number doesn't wait on the network while the
+ * backends keep up. A backend that is down or slow fills its connections' ring buffers, and adding a number for it
+ * then waits for room. That blocks the client worker, or with the ingest pipeline the single consumer and so every
+ * backend, until the backend catches up. The backend totals are polled from their admin ports and aggregated into
+ * a single cluster status.
+ */
+public class NumbersServiceRouterImpl implements NumbersService, Closeable {
+
+    /**
+     * The cluster part of the status string
+     */
+    static final String CLUSTER_STATUS_STRING = " (cluster of %d backends, %d up)";
+
+    /**
+     * The backend totals poll delay in seconds
+     */
+    private static final int BACKEND_POLL_DELAY = 1;
+
+    /**
+     * The backends, indexed by shard
+     */
+    private final List<Backend> backends;
+
+    /**
+     * The strategy for picking a number's backend
+     */
+    private final ShardStrategy shardStrategy;
+
+    /**
+     * The backend totals poller
+     */
+    private final ScheduledExecutorService backendPoller;
+
+    /**
+     * The cluster unique total at the last status report. Guarded by the getStatus monitor.
+     */
+    private long lastStatusUniqueTotal = 0;
+
+    /**
+     * The cluster duplicate total at the last status report. Guarded by the getStatus monitor.
+     */
+    private long lastStatusDuplicateTotal = 0;
+
+    /**
+     * Create a router numbers service and start polling the backend totals.
+     *
+     * @param backends The backends, indexed by shard
+     * @param shardStrategy The strategy for picking a number's backend
+     */
+    public NumbersServiceRouterImpl(final List<Backend> backends, final ShardStrategy shardStrategy) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("The router needs at least one backend");
+        }
+        this.backends = backends;
+        this.shardStrategy = shardStrategy;
+
+        backendPoller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "NewRelic Project Router Backend Poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        backendPoller.scheduleAtFixedRate(() -> backends.forEach(Backend::refreshTotals),
+                0, BACKEND_POLL_DELAY, TimeUnit.SECONDS);
+
+        System.out.println("Routing numbers by " + shardStrategy + " to backends: " + backends);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The number is validated and queued for its backend. Waits while the backend's connection is full.
+     */
+    public void addNumber(final String numberString) throws IOException {
+        route(NumbersServiceRAFImpl.convertToInteger(numberString));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The numbers are queued for their backends. Waits while a backend's connection is full.
+     */
+    public void addNumbers(final int[] numbers, final int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            route(numbers[i]);
+        }
+    }
+
+    /**
+     * Queue a number for its backend
+     *
+     * @param number The number
+     * @throws IOException When the backend has been closed
+     */
+    private void route(final int number) throws IOException {
+        Backend backend = backends.get(shardStrategy.shardFor(number, backends.size()));
+        if (!backend.send(number)) {
+            throw new IOException("Backend " + backend + " is closed");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The total is summed from the last polled backend totals.
+     */
+    public int getUniqueTotal() {
+        long uniqueTotal = 0;
+        for (Backend backend : backends) {
+            StatsTotals totals = backend.getTotals();
+            uniqueTotal += totals == null ? 0 : totals.getUniques();
+        }
+        return (int) uniqueTotal;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The total is summed from the last polled backend totals.
+     */
+    public long getDuplicateTotal() {
+        long duplicateTotal = 0;
+        for (Backend backend : backends) {
+            StatsTotals totals = backend.getTotals();
+            duplicateTotal += totals == null ? 0 : totals.getDuplicates();
+        }
+        return duplicateTotal;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The counts are aggregated from the last polled backend totals and followed by the count of backends up.
+     */
+    public synchronized String getStatus() {
+        long uniqueTotal = getUniqueTotal();
+        long duplicateTotal = getDuplicateTotal();
+        long upCount = backends.stream().filter(Backend::isUp).count();
+
+        String status = String.format(STATUS_STRING, uniqueTotal - lastStatusUniqueTotal,
+                duplicateTotal - lastStatusDuplicateTotal, uniqueTotal)
+                + String.format(CLUSTER_STATUS_STRING, backends.size(), upCount);
+        lastStatusUniqueTotal = uniqueTotal;
+        lastStatusDuplicateTotal = duplicateTotal;
+        return status;
+    }
+
+    /**
+     * Stop polling the backends and close the backend connections once all queued numbers are sent.
+     */
+    @Override
+    public void close() {
+        backendPoller.shutdownNow();
+        backends.forEach(Backend::close);
+    }
+}
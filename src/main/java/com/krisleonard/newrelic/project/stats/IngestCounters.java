@@ -0,0 +1,75 @@
+package com.krisleonard.newrelic.project.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative counters for socket input that are updated by client workers and read by the stats history sampler.
+ * The counters are striped so client workers never contend on them and they are never reset.
+ */
+public class IngestCounters {
+
+    /**
+     * The count of lines read from client sockets
+     */
+    private final LongAdder lines = new LongAdder();
+
+    /**
+     * The count of invalid lines read from client sockets
+     */
+    private final LongAdder invalidLines = new LongAdder();
+
+    /**
+     * The count of accepted client connections
+     */
+    private final LongAdder connections = new LongAdder();
+
+    /**
+     * Add to the count of lines read from client sockets
+     *
+     * @param count The count of lines read
+     */
+    public void addLines(long count) {
+        lines.add(count);
+    }
+
+    /**
+     * Increment the count of invalid lines read from client sockets
+     */
+    public void incrementInvalidLines() {
+        invalidLines.increment();
+    }
+
+    /**
+     * Increment the count of accepted client connections
+     */
+    public void incrementConnections() {
+        connections.increment();
+    }
+
+    /**
+     * Get the count of lines read from client sockets
+     *
+     * @return The count of lines read
+     */
+    public long getLines() {
+        return lines.sum();
+    }
+
+    /**
+     * Get the count of invalid lines read from client sockets
+     *
+     * @return The count of invalid lines read
+     */
+    public long getInvalidLines() {
+        return invalidLines.sum();
+    }
+
+    /**
+     * Get the count of accepted client connections
+     *
+     * @return The count of accepted client connections
+     */
+    public long getConnections() {
+        return connections.sum();
+    }
+}
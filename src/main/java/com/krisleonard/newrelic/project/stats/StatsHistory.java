@@ -0,0 +1,187 @@
+package com.krisleonard.newrelic.project.stats;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The windowed history of server stats at one second, ten second and one minute granularities. The history is
+ * sampled once a second from cumulative totals that are read without taking the numbers lock, and read from
+ * lock-free rings, so neither sampling nor reading ever touches the ingest path.
+ */
+public class StatsHistory {
+
+    /**
+     * The stats granularities
+     */
+    public enum Granularity {
+
+        /**
+         * One second intervals. Five minutes of history are kept.
+         */
+        ONE_SECOND("1s", 1, 300),
+
+        /**
+         * Ten second intervals. One hour of history is kept.
+         */
+        TEN_SECONDS("10s", 10, 360),
+
+        /**
+         * One minute intervals. One day of history is kept.
+         */
+        ONE_MINUTE("1m", 60, 1440);
+
+        /**
+         * The granularity name used by the admin protocol
+         */
+        private final String label;
+
+        /**
+         * The number of seconds per interval
+         */
+        private final int seconds;
+
+        /**
+         * The number of intervals of history kept
+         */
+        private final int capacity;
+
+        Granularity(String label, int seconds, int capacity) {
+            this.label = label;
+            this.seconds = seconds;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Get the granularity name used by the admin protocol
+         *
+         * @return The granularity name
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Find the granularity with the input name
+         *
+         * @param label The granularity name, such as 1s, 10s or 1m
+         * @return The granularity, or null if there is no granularity with the name
+         */
+        public static Granularity fromLabel(String label) {
+            for (Granularity granularity : values()) {
+                if (granularity.label.equalsIgnoreCase(label)) {
+                    return granularity;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The source of the cumulative totals
+     */
+    private final Supplier<StatsTotals> totalsSupplier;
+
+    /**
+     * The interval rings, indexed by granularity ordinal
+     */
+    private final StatsRing[] rings = new StatsRing[Granularity.values().length];
+
+    /**
+     * The intervals being combined into the next coarser interval, indexed by granularity ordinal. Only used by
+     * the sampling thread.
+     */
+    private final StatsInterval[] pending = new StatsInterval[Granularity.values().length];
+
+    /**
+     * The count of intervals combined into each pending interval, indexed by granularity ordinal. Only used by the
+     * sampling thread.
+     */
+    private final int[] pendingCounts = new int[Granularity.values().length];
+
+    /**
+     * The totals at the last sample. Only used by the sampling thread.
+     */
+    private StatsTotals lastTotals = null;
+
+    /**
+     * The time of the last sample in epoch milliseconds. Only used by the sampling thread.
+     */
+    private long lastSampleMillis = 0;
+
+    /**
+     * Create a stats history.
+     *
+     * @param totalsSupplier The source of the cumulative totals. Must not take the numbers lock.
+     */
+    public StatsHistory(Supplier<StatsTotals> totalsSupplier) {
+        this.totalsSupplier = totalsSupplier;
+        for (Granularity granularity : Granularity.values()) {
+            rings[granularity.ordinal()] = new StatsRing(granularity.capacity);
+        }
+    }
+
+    /**
+     * Sample the totals and record the interval since the last sample. Must be called once a second from a single
+     * thread.
+     */
+    public void sample() {
+        sample(System.currentTimeMillis(), totalsSupplier.get());
+    }
+
+    /**
+     * Record the interval between the last sample and these totals. The first sample only sets the baseline.
+     *
+     * @param nowMillis The sample time in epoch milliseconds
+     * @param totals The totals at the sample time
+     */
+    void sample(long nowMillis, StatsTotals totals) {
+        if (lastTotals != null) {
+            record(Granularity.ONE_SECOND, StatsInterval.between(lastSampleMillis, lastTotals, nowMillis, totals));
+        }
+        lastTotals = totals;
+        lastSampleMillis = nowMillis;
+    }
+
+    /**
+     * Add an interval to its ring and roll it up into the next coarser granularity.
+     *
+     * @param granularity The interval granularity
+     * @param interval The interval
+     */
+    private void record(Granularity granularity, StatsInterval interval) {
+        rings[granularity.ordinal()].add(interval);
+
+        if (granularity.ordinal() + 1 == Granularity.values().length) {
+            return;
+        }
+        Granularity coarser = Granularity.values()[granularity.ordinal() + 1];
+        int index = granularity.ordinal();
+        pending[index] = pending[index] == null ? interval : pending[index].plus(interval);
+        if (++pendingCounts[index] == coarser.seconds / granularity.seconds) {
+            StatsInterval combined = pending[index];
+            pending[index] = null;
+            pendingCounts[index] = 0;
+            record(coarser, combined);
+        }
+    }
+
+    /**
+     * Get up to the input count of the most recent intervals at a granularity, oldest first.
+     *
+     * @param granularity The granularity
+     * @param count The maximum count of intervals
+     * @return The most recent intervals, oldest first
+     */
+    public List<StatsInterval> getIntervals(Granularity granularity, int count) {
+        return rings[granularity.ordinal()].latest(count);
+    }
+
+    /**
+     * Get the current cumulative totals
+     *
+     * @return The current totals
+     */
+    public StatsTotals getTotals() {
+        return totalsSupplier.get();
+    }
+}
@@ -0,0 +1,197 @@
+package com.krisleonard.newrelic.project.stats;
+
+import java.time.Instant;
+
+/**
+ * An immutable set of counts for one interval of the stats history.
+ */
+public class StatsInterval {
+
+    /**
+     * The interval start time in epoch milliseconds
+     */
+    private final long startMillis;
+
+    /**
+     * The interval length in milliseconds
+     */
+    private final long durationMillis;
+
+    /**
+     * The count of unique numbers received in the interval
+     */
+    private final long uniques;
+
+    /**
+     * The count of duplicate numbers received in the interval
+     */
+    private final long duplicates;
+
+    /**
+     * The count of invalid lines received in the interval
+     */
+    private final long invalidLines;
+
+    /**
+     * The count of client connections accepted in the interval
+     */
+    private final long connections;
+
+    /**
+     * The count of open client connections at the end of the interval
+     */
+    private final long openConnections;
+
+    /**
+     * The count of lines received in the interval
+     */
+    private final long lines;
+
+    /**
+     * Create an interval.
+     *
+     * @param startMillis The interval start time in epoch milliseconds
+     * @param durationMillis The interval length in milliseconds
+     * @param uniques The count of unique numbers received in the interval
+     * @param duplicates The count of duplicate numbers received in the interval
+     * @param invalidLines The count of invalid lines received in the interval
+     * @param connections The count of client connections accepted in the interval
+     * @param openConnections The count of open client connections at the end of the interval
+     * @param lines The count of lines received in the interval
+     */
+    public StatsInterval(long startMillis, long durationMillis, long uniques, long duplicates, long invalidLines,
+                         long connections, long openConnections, long lines) {
+        this.startMillis = startMillis;
+        this.durationMillis = durationMillis;
+        this.uniques = uniques;
+        this.duplicates = duplicates;
+        this.invalidLines = invalidLines;
+        this.connections = connections;
+        this.openConnections = openConnections;
+        this.lines = lines;
+    }
+
+    /**
+     * Create the interval between two totals snapshots.
+     *
+     * @param startMillis The time of the earlier snapshot in epoch milliseconds
+     * @param start The earlier snapshot
+     * @param endMillis The time of the later snapshot in epoch milliseconds
+     * @param end The later snapshot
+     * @return The interval
+     */
+    public static StatsInterval between(long startMillis, StatsTotals start, long endMillis, StatsTotals end) {
+        return new StatsInterval(startMillis, endMillis - startMillis,
+                end.getUniques() - start.getUniques(),
+                end.getDuplicates() - start.getDuplicates(),
+                end.getInvalidLines() - start.getInvalidLines(),
+                end.getConnections() - start.getConnections(),
+                end.getOpenConnections(),
+                end.getLines() - start.getLines());
+    }
+
+    /**
+     * Combine this interval with the interval that directly follows it.
+     *
+     * @param next The following interval
+     * @return An interval covering both
+     */
+    public StatsInterval plus(StatsInterval next) {
+        return new StatsInterval(startMillis, durationMillis + next.durationMillis,
+                uniques + next.uniques, duplicates + next.duplicates, invalidLines + next.invalidLines,
+                connections + next.connections, next.openConnections, lines + next.lines);
+    }
+
+    /**
+     * Get the interval start time in epoch milliseconds
+     *
+     * @return The interval start time in epoch milliseconds
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Get the interval length in milliseconds
+     *
+     * @return The interval length in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Get the count of unique numbers received in the interval
+     *
+     * @return The count of unique numbers received in the interval
+     */
+    public long getUniques() {
+        return uniques;
+    }
+
+    /**
+     * Get the count of duplicate numbers received in the interval
+     *
+     * @return The count of duplicate numbers received in the interval
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Get the count of invalid lines received in the interval
+     *
+     * @return The count of invalid lines received in the interval
+     */
+    public long getInvalidLines() {
+        return invalidLines;
+    }
+
+    /**
+     * Get the count of client connections accepted in the interval
+     *
+     * @return The count of client connections accepted in the interval
+     */
+    public long getConnections() {
+        return connections;
+    }
+
+    /**
+     * Get the count of open client connections at the end of the interval
+     *
+     * @return The count of open client connections at the end of the interval
+     */
+    public long getOpenConnections() {
+        return openConnections;
+    }
+
+    /**
+     * Get the count of lines received in the interval
+     *
+     * @return The count of lines received in the interval
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * Get the lines received per second over the interval
+     *
+     * @return The throughput in lines per second
+     */
+    public double getThroughput() {
+        return durationMillis == 0 ? 0 : lines * 1000.0 / durationMillis;
+    }
+
+    /**
+     * Format the interval as its start time followed by space separated key=value pairs
+     *
+     * @return The formatted interval
+     */
+    @Override
+    public String toString() {
+        return String.format("%s uniques=%d duplicates=%d invalid=%d connections=%d open=%d lines=%d "
+                        + "throughput=%.1f/s", Instant.ofEpochMilli(startMillis), uniques, duplicates, invalidLines,
+                connections, openConnections, lines, getThroughput());
+    }
+}
@@ -0,0 +1,77 @@
+package com.krisleonard.newrelic.project.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size, lock-free ring of the most recent stats intervals. There is a single writer, and any number of
+ * readers that never block the writer or each other.
+ */
+public class StatsRing {
+
+    /**
+     * The ring slots
+     */
+    private final AtomicReferenceArray<StatsInterval> intervals;
+
+    /**
+     * The count of intervals ever added
+     */
+    private final AtomicLong addedCount = new AtomicLong();
+
+    /**
+     * Create a stats ring.
+     *
+     * @param capacity The number of most recent intervals kept
+     */
+    public StatsRing(int capacity) {
+        this.intervals = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Get the number of most recent intervals kept
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return intervals.length();
+    }
+
+    /**
+     * Add an interval, replacing the oldest if the ring is full. Must only be called by the single writer.
+     *
+     * @param interval The interval to add
+     */
+    public void add(StatsInterval interval) {
+        long count = addedCount.get();
+        intervals.set((int) (count % intervals.length()), interval);
+
+        // Publish the interval to readers after it is in its slot
+        addedCount.set(count + 1);
+    }
+
+    /**
+     * Get up to the input count of the most recent intervals, oldest first.
+     *
+     * @param count The maximum count of intervals to get. A count below one gets no intervals.
+     * @return The most recent intervals, oldest first
+     */
+    public List<StatsInterval> latest(int count) {
+        long end = addedCount.get();
+        long start = Math.max(0, end - Math.min(Math.max(count, 0), intervals.length()));
+
+        List<StatsInterval> latest = new ArrayList<>((int) (end - start));
+        for (long index = start; index < end; index++) {
+            latest.add(intervals.get((int) (index % intervals.length())));
+        }
+
+        // Drop any intervals the writer replaced while they were being read
+        long overwritten = addedCount.get() - intervals.length() - start;
+        if (overwritten > 0) {
+            latest.subList(0, (int) Math.min(overwritten, latest.size())).clear();
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,164 @@
+package com.krisleonard.newrelic.project.stats;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the cumulative server totals at a point in time.
+ */
+public class StatsTotals {
+
+    /**
+     * The total count of unique numbers received
+     */
+    private final long uniques;
+
+    /**
+     * The total count of duplicate numbers received
+     */
+    private final long duplicates;
+
+    /**
+     * The total count of invalid lines received
+     */
+    private final long invalidLines;
+
+    /**
+     * The total count of accepted client connections
+     */
+    private final long connections;
+
+    /**
+     * The count of currently open client connections
+     */
+    private final long openConnections;
+
+    /**
+     * The total count of lines received
+     */
+    private final long lines;
+
+    /**
+     * Create a totals snapshot.
+     *
+     * @param uniques The total count of unique numbers received
+     * @param duplicates The total count of duplicate numbers received
+     * @param invalidLines The total count of invalid lines received
+     * @param connections The total count of accepted client connections
+     * @param openConnections The count of currently open client connections
+     * @param lines The total count of lines received
+     */
+    public StatsTotals(long uniques, long duplicates, long invalidLines, long connections, long openConnections,
+                       long lines) {
+        this.uniques = uniques;
+        this.duplicates = duplicates;
+        this.invalidLines = invalidLines;
+        this.connections = connections;
+        this.openConnections = openConnections;
+        this.lines = lines;
+    }
+
+    /**
+     * Get the total count of unique numbers received
+     *
+     * @return The total count of unique numbers received
+     */
+    public long getUniques() {
+        return uniques;
+    }
+
+    /**
+     * Get the total count of duplicate numbers received
+     *
+     * @return The total count of duplicate numbers received
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Get the total count of invalid lines received
+     *
+     * @return The total count of invalid lines received
+     */
+    public long getInvalidLines() {
+        return invalidLines;
+    }
+
+    /**
+     * Get the total count of accepted client connections
+     *
+     * @return The total count of accepted client connections
+     */
+    public long getConnections() {
+        return connections;
+    }
+
+    /**
+     * Get the count of currently open client connections
+     *
+     * @return The count of currently open client connections
+     */
+    public long getOpenConnections() {
+        return openConnections;
+    }
+
+    /**
+     * Get the total count of lines received
+     *
+     * @return The total count of lines received
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * Parse totals formatted by {@link #toString()}
+     *
+     * @param line The formatted totals
+     * @return The totals
+     * @throws IllegalArgumentException When the line is not formatted totals
+     */
+    public static StatsTotals parse(String line) throws IllegalArgumentException {
+        Map<String, Long> values = new HashMap<>();
+        for (String pair : line.trim().split("\\s+")) {
+            String[] keyValue = pair.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Invalid totals: " + line);
+            }
+            values.put(keyValue[0], Long.parseLong(keyValue[1]));
+        }
+
+        return new StatsTotals(value(values, "uniques", line), value(values, "duplicates", line),
+                value(values, "invalid", line), value(values, "connections", line), value(values, "open", line),
+                value(values, "lines", line));
+    }
+
+    /**
+     * Get a required value from parsed totals
+     *
+     * @param values The parsed values
+     * @param key The key of the value
+     * @param line The formatted totals, for the error message
+     * @return The value
+     * @throws IllegalArgumentException When the value is missing
+     */
+    private static long value(Map<String, Long> values, String key, String line) throws IllegalArgumentException {
+        Long value = values.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + key + " in totals: " + line);
+        }
+        return value;
+    }
+
+    /**
+     * Format the totals as space separated key=value pairs
+     *
+     * @return The formatted totals
+     */
+    @Override
+    public String toString() {
+        return String.format("uniques=%d duplicates=%d invalid=%d connections=%d open=%d lines=%d",
+                uniques, duplicates, invalidLines, connections, openConnections, lines);
+    }
+}
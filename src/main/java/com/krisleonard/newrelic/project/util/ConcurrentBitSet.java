@@ -0,0 +1,95 @@
+package com.krisleonard.newrelic.project.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free set of non-negative ints backed by pages of atomic longs, one bit per int. Pages are only allocated
+ * once a bit in them is set, so a sparse set stays small. Reads never write, so many threads can check membership
+ * without contending on a shared cache line.
+ */
+public class ConcurrentBitSet {
+
+    /**
+     * The shift for converting a bit index to its page
+     */
+    private static final int PAGE_SHIFT = 16;
+
+    /**
+     * The count of bits per page
+     */
+    private static final int PAGE_BITS = 1 << PAGE_SHIFT;
+
+    /**
+     * The count of longs per page
+     */
+    private static final int PAGE_WORDS = PAGE_BITS / Long.SIZE;
+
+    /**
+     * The pages of bits. A null page has no bits set.
+     */
+    private final AtomicReferenceArray<AtomicLongArray> pages;
+
+    /**
+     * Create a bit set for the ints from zero to the input maximum.
+     *
+     * @param maxBit The largest int the set can hold
+     */
+    public ConcurrentBitSet(final int maxBit) {
+        if (maxBit < 0) {
+            throw new IllegalArgumentException("Invalid maximum bit: " + maxBit);
+        }
+        this.pages = new AtomicReferenceArray<>((maxBit >>> PAGE_SHIFT) + 1);
+    }
+
+    /**
+     * Check if a bit is set
+     *
+     * @param bit The bit index
+     * @return True if the bit is set. False if it isn't or is outside the set's range.
+     */
+    public boolean get(final int bit) {
+        int pageIndex = bit >>> PAGE_SHIFT;
+        if (pageIndex >= pages.length()) {
+            return false;
+        }
+        AtomicLongArray page = pages.get(pageIndex);
+        return page != null && (page.get((bit & (PAGE_BITS - 1)) >>> 6) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Set a bit
+     *
+     * @param bit The bit index
+     * @return True if the bit was set by this call. False if it was already set.
+     */
+    public boolean set(final int bit) {
+        AtomicLongArray page = page(bit >>> PAGE_SHIFT);
+        int wordIndex = (bit & (PAGE_BITS - 1)) >>> 6;
+        long mask = 1L << bit;
+        long word;
+        do {
+            word = page.get(wordIndex);
+            if ((word & mask) != 0) {
+                return false;
+            }
+        } while (!page.compareAndSet(wordIndex, word, word | mask));
+        return true;
+    }
+
+    /**
+     * Get a page, allocating it if it doesn't exist yet
+     *
+     * @param pageIndex The page index
+     * @return The page
+     */
+    private AtomicLongArray page(final int pageIndex) {
+        AtomicLongArray page = pages.get(pageIndex);
+        if (page == null) {
+            // Only one allocation wins if several threads race to create the page
+            pages.compareAndSet(pageIndex, null, new AtomicLongArray(PAGE_WORDS));
+            page = pages.get(pageIndex);
+        }
+        return page;
+    }
+}
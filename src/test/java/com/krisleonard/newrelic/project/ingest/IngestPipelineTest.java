@@ -0,0 +1,56 @@
+package com.krisleonard.newrelic.project.ingest;
+
+import com.krisleonard.newrelic.project.service.NumbersService;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The Unit test class for IngestPipeline
+ */
+public class IngestPipelineTest {
+
+    /**
+     * Verify an unexpected numbers service failure halts the pipeline and runs the error handler, so publishers
+     * never wait on a ring buffer nothing drains.
+     */
+    @Test
+    public void testConsumerFailureHaltsPipeline() throws InterruptedException {
+        NumbersService failingService = new NumbersService() {
+            public void addNumber(String numberString) {
+                throw new IllegalStateException("Failed adding " + numberString);
+            }
+
+            public void addNumbers(int[] numbers, int count) {
+                throw new IllegalStateException("Failed adding " + count + " numbers");
+            }
+
+            public int getUniqueTotal() {
+                return 0;
+            }
+
+            public long getDuplicateTotal() {
+                return 0;
+            }
+
+            public String getStatus() {
+                return "";
+            }
+        };
+
+        IngestPipeline ingestPipeline = new IngestPipeline(failingService, 4, 4, WaitStrategy.PARK);
+        CountDownLatch errorHandled = new CountDownLatch(1);
+        ingestPipeline.start(errorHandled::countDown);
+
+        assertTrue(ingestPipeline.publish(new int[]{1}, 1));
+        assertTrue(errorHandled.await(5, TimeUnit.SECONDS));
+
+        // More numbers than the ring buffer holds are rejected instead of waiting forever
+        assertFalse(ingestPipeline.publish(new int[]{1, 2, 3, 4, 5, 6, 7, 8}, 8));
+        ingestPipeline.stop();
+    }
+}
@@ -0,0 +1,121 @@
+package com.krisleonard.newrelic.project.ingest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The Unit test class for IngestRingBuffer
+ */
+public class IngestRingBufferTest {
+
+    /**
+     * Verify numbers are drained in the order they were published, including across a wrap of the ring.
+     */
+    @Test
+    public void testPublishAndDrainInOrder() {
+        IngestRingBuffer ringBuffer = new IngestRingBuffer(4, WaitStrategy.BUSY_SPIN);
+        int[] drained = new int[4];
+
+        assertTrue(ringBuffer.publish(new int[]{1, 2, 3}, 3));
+        assertEquals(3, ringBuffer.drain(drained, 4));
+        assertArrayEquals(new int[]{1, 2, 3}, new int[]{drained[0], drained[1], drained[2]});
+
+        assertTrue(ringBuffer.publish(new int[]{4, 5, 6, 7}, 4));
+        assertEquals(4, ringBuffer.size());
+        assertEquals(2, ringBuffer.drain(drained, 2));
+        assertEquals(4, drained[0]);
+        assertEquals(5, drained[1]);
+        assertEquals(2, ringBuffer.drain(drained, 4));
+        assertEquals(6, drained[0]);
+        assertEquals(7, drained[1]);
+        assertEquals(0, ringBuffer.drain(drained, 4));
+    }
+
+    /**
+     * Verify every number from several producers is drained exactly once when the ring is much smaller than the
+     * total published.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        IngestRingBuffer ringBuffer = new IngestRingBuffer(64, WaitStrategy.YIELD);
+        int producerCount = 4;
+        int numbersPerProducer = 100000;
+
+        // Each producer publishes its own range of numbers in small batches
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < producerCount; p++) {
+            final int base = p * numbersPerProducer;
+            producers.add(new Thread(() -> {
+                int[] batch = new int[7];
+                int count = 0;
+                for (int i = 0; i < numbersPerProducer; i++) {
+                    batch[count++] = base + i;
+                    if (count == batch.length) {
+                        ringBuffer.publish(batch, count);
+                        count = 0;
+                    }
+                }
+                ringBuffer.publish(batch, count);
+            }));
+        }
+        producers.forEach(Thread::start);
+
+        boolean[] seen = new boolean[producerCount * numbersPerProducer];
+        int[] drained = new int[32];
+        int total = 0;
+        while (total < seen.length) {
+            int count = ringBuffer.drain(drained, drained.length);
+            for (int i = 0; i < count; i++) {
+                assertFalse(seen[drained[i]]);
+                seen[drained[i]] = true;
+            }
+            total += count;
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(0, ringBuffer.size());
+    }
+
+    /**
+     * Verify tryPublish gives up instead of waiting when the ring buffer is full.
+     */
+    @Test
+    public void testTryPublishWhenFull() {
+        IngestRingBuffer ringBuffer = new IngestRingBuffer(2, WaitStrategy.PARK);
+        int[] drained = new int[2];
+
+        assertTrue(ringBuffer.tryPublish(1));
+        assertTrue(ringBuffer.tryPublish(2));
+        assertFalse(ringBuffer.tryPublish(3));
+        assertEquals(2, ringBuffer.drain(drained, 2));
+        assertTrue(ringBuffer.tryPublish(4));
+        assertEquals(1, ringBuffer.drain(drained, 2));
+        assertEquals(4, drained[0]);
+    }
+
+    /**
+     * Verify publishing to a halted ring buffer is refused.
+     */
+    @Test
+    public void testHalt() {
+        IngestRingBuffer ringBuffer = new IngestRingBuffer(4, WaitStrategy.PARK);
+        ringBuffer.halt();
+        assertFalse(ringBuffer.publish(new int[]{1}, 1));
+    }
+
+    /**
+     * Verify the capacity must be a power of two.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new IngestRingBuffer(3, WaitStrategy.PARK);
+    }
+}
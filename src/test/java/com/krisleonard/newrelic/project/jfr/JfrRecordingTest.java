@@ -0,0 +1,116 @@
+package com.krisleonard.newrelic.project.jfr;
+
+import com.krisleonard.newrelic.project.server.SocketServer;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRAFImpl;
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for recording the project JFR events with the bundled settings profile
+ */
+public class JfrRecordingTest {
+
+    /**
+     * The client connection port
+     */
+    private static final int PORT = 4520;
+
+    /**
+     * Verify the bundled settings profile enables every project event by its event name.
+     */
+    @Test
+    public void testProfileEnablesEveryEvent() throws IOException, ParseException {
+        Map<String, String> settings = JfrRecording.loadProjectConfiguration().getSettings();
+        List<Class<? extends Event>> eventClasses = Arrays.asList(AddNumberEvent.class, ConnectionAcceptEvent.class,
+                ConnectionEvent.class, ConnectionQueueWaitEvent.class, ConnectionTurnEvent.class,
+                InvalidInputEvent.class, NumbersFileReadEvent.class, NumbersFileWriteEvent.class,
+                NumbersLockWaitEvent.class, ServerShutdownEvent.class);
+        for (Class<? extends Event> eventClass : eventClasses) {
+            String eventName = eventClass.getAnnotation(Name.class).value();
+            assertEquals(eventName, "true", settings.get(eventName + "#enabled"));
+        }
+    }
+
+    /**
+     * Verify adding a number, an invalid line and a server shutdown are recorded with their fields set.
+     */
+    @Test
+    public void testEventsRecorded() throws IOException, ParseException, InterruptedException {
+        Path directory = Files.createTempDirectory("jfr");
+        Path recordingPath = directory.resolve("recording.jfr");
+        Path numbersLogPath = directory.resolve("numbers.log");
+        try {
+            Recording recording = JfrRecording.start(recordingPath);
+            // Record every add, however fast, instead of only those over the profile's threshold
+            recording.enable(AddNumberEvent.class).withThreshold(Duration.ZERO);
+
+            SocketServer socketServer = new SocketServer(new NumbersServiceRAFImpl(numbersLogPath));
+            Thread serverThread = new Thread(() -> socketServer.startServer(PORT, 1, 10));
+            serverThread.start();
+            Thread.sleep(1000);
+
+            // A number then an invalid line, which closes the connection
+            try (Socket socket = new Socket("localhost", PORT)) {
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                out.println("000000042");
+                out.println("bad");
+                socket.setSoTimeout(10 * 1000);
+                assertEquals(-1, socket.getInputStream().read());
+            }
+            socketServer.shutdown();
+            serverThread.join();
+            recording.stop();
+            recording.close();
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(recordingPath);
+            List<RecordedEvent> addNumberEvents = eventsNamed(events, AddNumberEvent.class);
+            assertEquals(1, addNumberEvents.size());
+            assertEquals(42, addNumberEvents.get(0).getInt("number"));
+            assertTrue(addNumberEvents.get(0).getBoolean("unique"));
+
+            List<RecordedEvent> invalidInputEvents = eventsNamed(events, InvalidInputEvent.class);
+            assertEquals(1, invalidInputEvents.size());
+            assertEquals("bad", invalidInputEvents.get(0).getString("input"));
+            assertTrue(invalidInputEvents.get(0).getLong("connectionId") > 0);
+
+            // The accept loop and the test both shut the server down, but it only stops once
+            assertEquals(1, eventsNamed(events, ServerShutdownEvent.class).size());
+        } finally {
+            Files.deleteIfExists(recordingPath);
+            Files.deleteIfExists(numbersLogPath);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Get the recorded events of an event class
+     *
+     * @param events The recorded events
+     * @param eventClass The event class
+     * @return The recorded events of the event class
+     */
+    private static List<RecordedEvent> eventsNamed(List<RecordedEvent> events, Class<? extends Event> eventClass) {
+        String eventName = eventClass.getAnnotation(Name.class).value();
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(eventName))
+                .collect(Collectors.toList());
+    }
+}
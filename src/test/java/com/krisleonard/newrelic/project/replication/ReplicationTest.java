@@ -0,0 +1,203 @@
+package com.krisleonard.newrelic.project.replication;
+
+import com.krisleonard.newrelic.project.service.NumbersService;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRAFImpl;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for replicating a leader's numbers to a follower over loopback
+ */
+public class ReplicationTest {
+
+    /**
+     * The replication port
+     */
+    private static final int REPLICATION_PORT = 4402;
+
+    /**
+     * Verify a follower is caught up with numbers added before it connected, streamed numbers added after, and
+     * keeps them all when its numbers service is recreated from the preserved numbers log.
+     */
+    @Test
+    public void testFollowerReplicatesLeader() throws IOException, InterruptedException {
+        Path logDirectory = Files.createTempDirectory("replication");
+        Path leaderLogPath = logDirectory.resolve("leader.log");
+        Path followerLogPath = logDirectory.resolve("follower.log");
+        try {
+            NumbersService leaderService = new NumbersServiceRAFImpl(leaderLogPath);
+            NumbersService followerService = new NumbersServiceRAFImpl(followerLogPath);
+
+            // Numbers added before the follower connects are caught up from the numbers log. The follower already has 2
+            leaderService.addNumbers(new int[] {1, 2, 3}, 3);
+            followerService.addNumber("000000002");
+            ReplicationLeader replicationLeader = new ReplicationLeader(leaderService, leaderLogPath);
+            replicationLeader.start(REPLICATION_PORT);
+
+            ReplicationFollower replicationFollower =
+                    new ReplicationFollower(followerService, "localhost", REPLICATION_PORT, 60 * 1000);
+            boolean[] tookOver = new boolean[1];
+            Thread followerThread = new Thread(() -> tookOver[0] = replicationFollower.follow());
+            followerThread.start();
+            try {
+                waitForUniqueTotal(followerService, 3);
+                assertEquals(0, followerService.getDuplicateTotal());
+
+                // Numbers added while the follower is connected are streamed
+                leaderService.addNumber("000000004");
+                leaderService.addNumber("000000001");
+                leaderService.addNumbers(new int[] {5, 6, 5}, 3);
+                waitForUniqueTotal(followerService, 6);
+                assertEquals(6, followerService.getUniqueTotal());
+                assertEquals(0, followerService.getDuplicateTotal());
+                assertEquals(0, replicationFollower.getLagNumbers());
+            } finally {
+                replicationFollower.close();
+                followerThread.join();
+                replicationLeader.close();
+            }
+            assertFalse(tookOver[0]);
+
+            // A preserved numbers log keeps the replicated numbers
+            assertEquals(6, new NumbersServiceRAFImpl(followerLogPath, true).getUniqueTotal());
+        } finally {
+            Files.deleteIfExists(leaderLogPath);
+            Files.deleteIfExists(followerLogPath);
+            Files.deleteIfExists(logDirectory);
+        }
+    }
+
+    /**
+     * Verify a follower stays connected and is caught up while the leader reads a sparse numbers log that takes
+     * longer than the follower's leader timeout to read. Short heartbeat and leader timeouts keep the log small.
+     */
+    @Test
+    public void testFollowerCaughtUpFromSparseLog() throws IOException, InterruptedException {
+        Path logDirectory = Files.createTempDirectory("replication");
+        Path leaderLogPath = logDirectory.resolve("leader.log");
+        Path followerLogPath = logDirectory.resolve("follower.log");
+        try {
+            NumbersService leaderService = new NumbersServiceRAFImpl(leaderLogPath);
+            NumbersService followerService = new NumbersServiceRAFImpl(followerLogPath);
+
+            // The highest number makes the numbers log a sparse file of about a gigabyte
+            leaderService.addNumbers(new int[] {1, 99999999}, 2);
+            ReplicationLeader replicationLeader = new ReplicationLeader(leaderService, leaderLogPath, 5);
+            replicationLeader.start(REPLICATION_PORT);
+
+            // A leader timeout shorter than the catch up only passes if the leader keeps sending heartbeats
+            ReplicationFollower replicationFollower =
+                    new ReplicationFollower(followerService, "localhost", REPLICATION_PORT, 10 * 1000, 25);
+            boolean[] tookOver = new boolean[1];
+            Thread followerThread = new Thread(() -> tookOver[0] = replicationFollower.follow());
+            followerThread.start();
+            try {
+                waitForUniqueTotal(followerService, 2, 60 * 1000);
+                assertEquals(2, followerService.getUniqueTotal());
+            } finally {
+                replicationFollower.close();
+                followerThread.join();
+                replicationLeader.close();
+            }
+            assertFalse(tookOver[0]);
+        } finally {
+            Files.deleteIfExists(leaderLogPath);
+            Files.deleteIfExists(followerLogPath);
+            Files.deleteIfExists(logDirectory);
+        }
+    }
+
+    /**
+     * Verify a leader that fails to start leaves neither the replication port bound nor a listener on the numbers
+     * service.
+     */
+    @Test
+    public void testFailedStartCleansUp() throws IOException {
+        Path logDirectory = Files.createTempDirectory("replication");
+        Path leaderLogPath = logDirectory.resolve("leader.log");
+        try {
+            // The port is taken, so the listener is removed again and new numbers aren't queued for a follower
+            NumbersService leaderService = new NumbersServiceRAFImpl(leaderLogPath);
+            ReplicationLeader replicationLeader = new ReplicationLeader(leaderService, leaderLogPath);
+            try (ServerSocket takenSocket = new ServerSocket(REPLICATION_PORT)) {
+                replicationLeader.start(REPLICATION_PORT);
+                fail("Expected the taken replication port to fail the start");
+            } catch (BindException e) {
+                // Expected
+            }
+            leaderService.addNumber("000000001");
+            assertEquals(0, replicationLeader.getLagNumbers());
+
+            // A numbers service without unique number listeners is rejected before the port is bound
+            NumbersService unsupportedService = new NumbersService() {
+                @Override
+                public void addNumber(String numberString) {
+                }
+
+                @Override
+                public void addNumbers(int[] numbers, int count) {
+                }
+
+                @Override
+                public int getUniqueTotal() {
+                    return 0;
+                }
+
+                @Override
+                public long getDuplicateTotal() {
+                    return 0;
+                }
+
+                @Override
+                public String getStatus() {
+                    return "";
+                }
+            };
+            try {
+                new ReplicationLeader(unsupportedService, leaderLogPath).start(REPLICATION_PORT);
+                fail("Expected the numbers service to be rejected");
+            } catch (UnsupportedOperationException e) {
+                // Expected
+            }
+            new ServerSocket(REPLICATION_PORT).close();
+        } finally {
+            Files.deleteIfExists(leaderLogPath);
+            Files.deleteIfExists(logDirectory);
+        }
+    }
+
+    /**
+     * Wait up to ten seconds for a numbers service to reach a unique total
+     *
+     * @param numbersService The numbers service
+     * @param uniqueTotal The unique total to wait for
+     */
+    private static void waitForUniqueTotal(NumbersService numbersService, int uniqueTotal)
+            throws InterruptedException {
+        waitForUniqueTotal(numbersService, uniqueTotal, 10 * 1000);
+    }
+
+    /**
+     * Wait for a numbers service to reach a unique total
+     *
+     * @param numbersService The numbers service
+     * @param uniqueTotal The unique total to wait for
+     * @param timeoutMillis How long to wait in milliseconds
+     */
+    private static void waitForUniqueTotal(NumbersService numbersService, int uniqueTotal, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (numbersService.getUniqueTotal() < uniqueTotal && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.krisleonard.newrelic.project.router;
+
+import com.krisleonard.newrelic.project.server.AdminServer;
+import com.krisleonard.newrelic.project.server.SocketServer;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRAFImpl;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRouterImpl;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Integration test for a router and two backend socket servers over loopback
+ */
+public class ClusterIntegrationTest {
+
+    /**
+     * The first backend client connection port
+     */
+    private static final int BACKEND_BASE_PORT = 4310;
+
+    /**
+     * The router client connection port
+     */
+    private static final int ROUTER_PORT = 4300;
+
+    /**
+     * The count of backends
+     */
+    private static final int BACKEND_COUNT = 2;
+
+    @Test
+    public void testRouterSpreadsNumbersAcrossBackends() throws IOException, InterruptedException {
+        Path logDirectory = Files.createTempDirectory("cluster");
+        List<SocketServer> backendServers = new ArrayList<>();
+        List<AdminServer> adminServers = new ArrayList<>();
+        List<Thread> serverThreads = new ArrayList<>();
+        List<Backend> backends = new ArrayList<>();
+
+        try {
+            // Start the backends, each with its own numbers log and admin port
+            for (int i = 0; i < BACKEND_COUNT; i++) {
+                int port = BACKEND_BASE_PORT + i * 2;
+                SocketServer backendServer =
+                        new SocketServer(new NumbersServiceRAFImpl(logDirectory.resolve("numbers-" + i + ".log")));
+                AdminServer adminServer = new AdminServer(backendServer.getStatsHistory());
+                adminServer.start(port + 1);
+
+                Thread serverThread = new Thread(() -> backendServer.startServer(port, 2, 10));
+                serverThread.start();
+
+                backendServers.add(backendServer);
+                adminServers.add(adminServer);
+                serverThreads.add(serverThread);
+                backends.add(new Backend("localhost", port, port + 1, 2));
+            }
+
+            // Start the router
+            NumbersServiceRouterImpl routerService = new NumbersServiceRouterImpl(backends, ShardStrategy.RANGE);
+            SocketServer routerServer = new SocketServer(routerService);
+            Thread routerThread = new Thread(() -> routerServer.startServer(ROUTER_PORT, 2, 10));
+            routerThread.start();
+            backendServers.add(routerServer);
+            serverThreads.add(routerThread);
+            Thread.sleep(1000);
+
+            // One number for each half of the range, and a duplicate of each
+            try (Socket socket = new Socket("localhost", ROUTER_PORT)) {
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                for (String number : Arrays.asList("000000001", "900000000", "000000001", "900000000")) {
+                    out.println(number);
+                }
+            }
+
+            // Wait for the backend totals to be polled
+            long deadline = System.currentTimeMillis() + 10 * 1000;
+            while ((routerService.getUniqueTotal() < 2 || routerService.getDuplicateTotal() < 2)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+
+            assertEquals(2, routerService.getUniqueTotal());
+            assertEquals(2, routerService.getDuplicateTotal());
+            for (SocketServer backendServer : backendServers.subList(0, BACKEND_COUNT)) {
+                assertEquals(1, backendServer.getTotals().getUniques());
+            }
+            assertTrue(routerService.getStatus().endsWith("(cluster of 2 backends, 2 up)"));
+        } finally {
+            // Shutdown everything, router first so queued numbers reach the backends
+            for (int i = backendServers.size() - 1; i >= 0; i--) {
+                backendServers.get(i).shutdown();
+                serverThreads.get(i).join();
+            }
+            adminServers.forEach(AdminServer::shutdown);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.krisleonard.newrelic.project.router;
+
+import org.junit.Test;
+
+import static com.krisleonard.newrelic.project.service.NumbersService.MAX_NUMBER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The Unit test class for ShardStrategy
+ */
+public class ShardStrategyTest {
+
+    /**
+     * Verify range sharding splits the number range into equal contiguous ranges.
+     */
+    @Test
+    public void testRangeShards() {
+        assertEquals(0, ShardStrategy.RANGE.shardFor(0, 4));
+        assertEquals(0, ShardStrategy.RANGE.shardFor(249999999, 4));
+        assertEquals(1, ShardStrategy.RANGE.shardFor(250000000, 4));
+        assertEquals(3, ShardStrategy.RANGE.shardFor(MAX_NUMBER, 4));
+        assertEquals(0, ShardStrategy.RANGE.shardFor(MAX_NUMBER, 1));
+    }
+
+    /**
+     * Verify hash sharding stays in range and spreads consecutive numbers across shards.
+     */
+    @Test
+    public void testHashShards() {
+        int shardCount = 3;
+        int[] counts = new int[shardCount];
+        for (int number = 0; number < 30000; number++) {
+            int shard = ShardStrategy.HASH.shardFor(number, shardCount);
+            assertTrue(shard >= 0 && shard < shardCount);
+            counts[shard]++;
+        }
+
+        for (int count : counts) {
+            assertTrue(count > 9000 && count < 11000);
+        }
+        assertEquals(ShardStrategy.HASH.shardFor(MAX_NUMBER, shardCount),
+                ShardStrategy.HASH.shardFor(MAX_NUMBER, shardCount));
+    }
+}
@@ -0,0 +1,198 @@
+package com.krisleonard.newrelic.project.server;
+
+import com.krisleonard.newrelic.project.service.NumbersService;
+import com.krisleonard.newrelic.project.service.impl.NumbersServiceRAFImpl;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for client workers reading lines from sockets and sharing the client connection thread pool over loopback
+ */
+public class ClientWorkerTest {
+
+    /**
+     * The client connection port
+     */
+    private static final int PORT = 4500;
+
+    /**
+     * The numbers added by client workers
+     */
+    private final Set<Integer> addedNumbers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A numbers service that only records the numbers added
+     */
+    private final NumbersService numbersService = new NumbersService() {
+        @Override
+        public void addNumber(String numberString) {
+            addedNumbers.add(NumbersServiceRAFImpl.convertToInteger(numberString));
+        }
+
+        @Override
+        public void addNumbers(int[] numbers, int count) {
+            for (int i = 0; i < count; i++) {
+                addedNumbers.add(numbers[i]);
+            }
+        }
+
+        @Override
+        public int getUniqueTotal() {
+            return addedNumbers.size();
+        }
+
+        @Override
+        public long getDuplicateTotal() {
+            return 0;
+        }
+
+        @Override
+        public String getStatus() {
+            return "";
+        }
+    };
+
+    /**
+     * The socket server
+     */
+    private SocketServer socketServer = null;
+
+    /**
+     * The thread running the socket server
+     */
+    private Thread serverThread = null;
+
+    /**
+     * Start the socket server with a single pool thread and wait for it to listen
+     *
+     * @param quantumLines The maximum count of lines a connection is served per turn
+     */
+    private void startServer(int quantumLines) throws InterruptedException {
+        socketServer = new SocketServer(numbersService);
+        serverThread = new Thread(() -> socketServer.startServer(PORT, 1, 10, quantumLines,
+                SocketServer.DEFAULT_CONNECTION_IDLE_TIMEOUT));
+        serverThread.start();
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        if (socketServer != null) {
+            socketServer.shutdown();
+            serverThread.join();
+        }
+    }
+
+    /**
+     * Write a string to a socket
+     *
+     * @param out The socket output stream
+     * @param data The string to write
+     */
+    private static void write(OutputStream out, String data) throws IOException {
+        out.write(data.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Wait up to ten seconds for a number to be added
+     *
+     * @param number The number to wait for
+     */
+    private void waitForNumber(int number) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10 * 1000;
+        while (!addedNumbers.contains(number) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Verify a line split across idle turns, long enough for the connection to be parked, is reassembled.
+     */
+    @Test
+    public void testLineSplitAcrossIdleTimeout() throws IOException, InterruptedException {
+        startServer(SocketServer.DEFAULT_CONNECTION_QUANTUM_LINES);
+        try (Socket socket = new Socket("localhost", PORT)) {
+            OutputStream out = socket.getOutputStream();
+            write(out, "0000");
+            Thread.sleep(300);
+            write(out, "00042\r\n");
+            waitForNumber(42);
+        }
+
+        assertEquals(Collections.singleton(42), addedNumbers);
+        assertEquals(0, socketServer.getIngestCounters().getInvalidLines());
+    }
+
+    /**
+     * Verify a line longer than a number, and one longer than the line buffer, are rejected and close the connection.
+     */
+    @Test
+    public void testOverLengthLineRejected() throws IOException, InterruptedException {
+        startServer(SocketServer.DEFAULT_CONNECTION_QUANTUM_LINES);
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longLine.append(i % 10);
+        }
+
+        for (String line : new String[] {"0000000042", longLine.toString()}) {
+            try (Socket socket = new Socket("localhost", PORT)) {
+                socket.setSoTimeout(10 * 1000);
+                write(socket.getOutputStream(), line + "\n");
+                assertEquals(-1, socket.getInputStream().read());
+            }
+        }
+
+        assertTrue(addedNumbers.isEmpty());
+        assertEquals(2, socketServer.getIngestCounters().getInvalidLines());
+    }
+
+    /**
+     * Verify two connections that always have data both make progress on a pool of one thread.
+     */
+    @Test
+    public void testBusyConnectionsShareOnePoolThread() throws IOException, InterruptedException {
+        startServer(10);
+        try (Socket busySocket = new Socket("localhost", PORT); Socket socket = new Socket("localhost", PORT)) {
+            // Keep the first connection's socket full of numbers below 100000
+            StringBuilder busyLines = new StringBuilder();
+            for (int i = 0; i < 100000; i++) {
+                busyLines.append(String.format("%09d%n", i));
+            }
+            byte[] busyData = busyLines.toString().getBytes(StandardCharsets.US_ASCII);
+            Thread busyWriter = new Thread(() -> {
+                try {
+                    OutputStream out = busySocket.getOutputStream();
+                    while (true) {
+                        out.write(busyData);
+                    }
+                } catch (IOException e) {
+                    // The socket was closed
+                }
+            });
+            busyWriter.start();
+            waitForNumber(10);
+
+            // The second connection is served between the first connection's turns
+            OutputStream out = socket.getOutputStream();
+            for (int i = 0; i < 100; i++) {
+                write(out, String.format("%09d%n", 500000000 + i));
+            }
+            for (int i = 0; i < 100; i++) {
+                waitForNumber(500000000 + i);
+                assertTrue(addedNumbers.contains(500000000 + i));
+            }
+            assertTrue(busyWriter.isAlive());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.krisleonard.newrelic.project.server;
+
+import com.krisleonard.newrelic.project.util.ThreadUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.*;
+
+/**
+ * The Unit test class for ConnectionScheduler
+ */
+public class ConnectionSchedulerTest {
+
+    /**
+     * Released to let the pool thread finish
+     */
+    private final CountDownLatch poolThreadRelease = new CountDownLatch(1);
+
+    /**
+     * A thread pool of one thread and a work queue of one
+     */
+    private ThreadPoolExecutor threadPoolExecutor = null;
+
+    /**
+     * The connection scheduler
+     */
+    private ConnectionScheduler connectionScheduler = null;
+
+    /**
+     * A client worker that is never run
+     */
+    private ClientWorker clientWorker = null;
+
+    @Before
+    public void before() throws InterruptedException {
+        threadPoolExecutor = ThreadUtil.createDaemonExecutor(1, 1, "Connection Scheduler Test");
+        connectionScheduler = new ConnectionScheduler(threadPoolExecutor, 10, 5);
+        clientWorker = new ClientWorker(null, null, connectionScheduler, new SocketServer(), null);
+
+        // Hold the only pool thread and fill the work queue
+        CountDownLatch poolThreadStarted = new CountDownLatch(1);
+        threadPoolExecutor.execute(() -> {
+            poolThreadStarted.countDown();
+            try {
+                poolThreadRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        poolThreadStarted.await();
+        threadPoolExecutor.execute(() -> { });
+    }
+
+    @After
+    public void after() {
+        poolThreadRelease.countDown();
+        threadPoolExecutor.shutdownNow();
+        connectionScheduler.shutdown();
+    }
+
+    /**
+     * Verify a turn is served in place when the work queue is full, and counted once in the service share report.
+     */
+    @Test
+    public void testFullQueueTurnServedInPlace() {
+        assertFalse(connectionScheduler.requeue(clientWorker, 0));
+        assertTrue(connectionScheduler.getServiceShareReport()
+                .contains(", 1 turns served in place because the work queue was full"));
+        assertFalse(connectionScheduler.getServiceShareReport().contains("served in place"));
+    }
+
+    /**
+     * Verify an idle connection is parked instead of queued, stays parked while the work queue is full, and is
+     * handed back for closing at shutdown.
+     */
+    @Test
+    public void testIdleConnectionParked() throws InterruptedException {
+        assertTrue(connectionScheduler.requeue(clientWorker, 3));
+        assertTrue(connectionScheduler.getServiceShareReport().contains("1 waiting, 1 parked"));
+
+        // Parked connections are checked every 100 milliseconds, but there is no room in the work queue
+        Thread.sleep(300);
+        assertEquals(Collections.singletonList(clientWorker), connectionScheduler.shutdown());
+    }
+}
@@ -0,0 +1,147 @@
+package com.krisleonard.newrelic.project.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.krisleonard.newrelic.project.service.NumbersService.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The Unit test class for NumbersServiceAsyncImpl
+ */
+public class NumbersServiceAsyncImplTest {
+
+    /**
+     * The numbers service
+     */
+    private NumbersServiceAsyncImpl numbersService = null;
+
+    @Before
+    public void before() throws IOException {
+        // Create the numbers service
+        numbersService = new NumbersServiceAsyncImpl();
+    }
+
+    @After
+    public void after() throws IOException {
+        numbersService.close();
+    }
+
+    /**
+     * Basic happy path test for NumbersServiceAsyncImpl
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testHappyPathFunctionality() throws IOException {
+        // Check initial value
+        assertEquals(String.format(STATUS_STRING, 0, 0, 0), numbersService.getStatus());
+
+        // Add all zeros
+        numbersService.addNumber("000000000");
+        assertEquals(String.format(STATUS_STRING, 1, 0, 1), numbersService.getStatus());
+
+        // Check after adding a number
+        numbersService.addNumber("123456789");
+        assertEquals(String.format(STATUS_STRING, 1, 0, 2), numbersService.getStatus());
+
+        // Check after adding a duplicate
+        numbersService.addNumber("123456789");
+        assertEquals(String.format(STATUS_STRING, 0, 1, 2), numbersService.getStatus());
+    }
+
+    /**
+     * Verify that many in flight adds of the same and different numbers are counted correctly.
+     */
+    @Test
+    public void testConcurrentAsyncAdds() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(numbersService.addNumberAsync(String.format("%09d", i % 10)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        assertEquals(String.format(STATUS_STRING, 10, 90, 10), numbersService.getStatus());
+    }
+
+    /**
+     * Verify many in flight adds share the fixed pool of file IO threads instead of each getting a thread.
+     */
+    @Test
+    public void testFileIoThreadsBounded() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            futures.add(numbersService.addNumberAsync(String.format("%09d", i * 1000)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        long fileIoThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("NewRelic Project Numbers Log IO"))
+                .count();
+        assertTrue(fileIoThreads > 0);
+        assertTrue(fileIoThreads <= Runtime.getRuntime().availableProcessors());
+        assertEquals(String.format(STATUS_STRING, 2000, 0, 2000), numbersService.getStatus());
+    }
+
+    /**
+     * Verify duplicates counted through the known duplicate check and through the add path are each counted once in
+     * the status deltas and the duplicate total.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testDuplicatesCountedOnce() throws IOException {
+        numbersService.addNumber("000000042");
+        assertEquals(String.format(STATUS_STRING, 1, 0, 1), numbersService.getStatus());
+
+        assertTrue(numbersService.addKnownDuplicate(42));
+        numbersService.addNumber("000000042");
+        assertEquals(2, numbersService.getDuplicateTotal());
+        assertEquals(String.format(STATUS_STRING, 0, 2, 1), numbersService.getStatus());
+        assertEquals(String.format(STATUS_STRING, 0, 0, 1), numbersService.getStatus());
+        assertEquals(2, numbersService.getDuplicateTotal());
+
+        // A parsed number that isn't a known duplicate is added without being checked again
+        assertFalse(numbersService.addKnownDuplicate(43));
+        numbersService.addNumberAsync(43).join();
+        assertEquals(String.format(STATUS_STRING, 1, 0, 2), numbersService.getStatus());
+        assertEquals(2, numbersService.getDuplicateTotal());
+    }
+
+    /**
+     * Verify replicated numbers already in the numbers log are skipped without being counted as duplicates.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testApplyReplicatedSkipsDuplicates() throws IOException {
+        numbersService.addNumber("000000007");
+        assertEquals(String.format(STATUS_STRING, 1, 0, 1), numbersService.getStatus());
+
+        // A catch up resends 7, and 8 arrives twice in one batch
+        numbersService.applyReplicated(new int[] {7, 8, 8}, 3);
+        assertEquals(2, numbersService.getUniqueTotal());
+        assertEquals(0, numbersService.getDuplicateTotal());
+        assertEquals(String.format(STATUS_STRING, 0, 0, 2), numbersService.getStatus());
+
+        // Client duplicates are still counted
+        numbersService.addNumber("000000008");
+        assertEquals(1, numbersService.getDuplicateTotal());
+    }
+
+    /**
+     * Verify invalid numbers are rejected before anything is queued.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNumber() {
+        numbersService.addNumberAsync("1234");
+    }
+}
@@ -11,9 +11,14 @@ import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.krisleonard.newrelic.project.service.NumbersService.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * The Unit test class for NumbersServiceRAFImpl
@@ -61,6 +66,74 @@ public class NumbersServiceRAFImplTest {
         assertEquals(String.format(STATUS_STRING, 0, 1, 2), numbersService.getStatus());
     }
 
+    /**
+     * Verify duplicates counted through the known duplicate check and through the add path are each counted once in
+     * the status deltas and the duplicate total.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testDuplicatesCountedOnce() throws IOException {
+        numbersService.addNumber("000000042");
+        assertEquals(String.format(STATUS_STRING, 1, 0, 1), numbersService.getStatus());
+
+        assertTrue(numbersService.addKnownDuplicate(42));
+        numbersService.addNumber("000000042");
+        assertEquals(2, numbersService.getDuplicateTotal());
+        assertEquals(String.format(STATUS_STRING, 0, 2, 1), numbersService.getStatus());
+        assertEquals(String.format(STATUS_STRING, 0, 0, 1), numbersService.getStatus());
+        assertEquals(2, numbersService.getDuplicateTotal());
+
+        // A parsed number that isn't a known duplicate is added without being checked again
+        assertFalse(numbersService.addKnownDuplicate(43));
+        numbersService.addNumberAsync(43).join();
+        assertEquals(String.format(STATUS_STRING, 1, 0, 2), numbersService.getStatus());
+        assertEquals(2, numbersService.getDuplicateTotal());
+    }
+
+    /**
+     * Verify replicated numbers already in the numbers log are skipped without being counted as duplicates.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testApplyReplicatedSkipsDuplicates() throws IOException {
+        numbersService.addNumber("000000007");
+        assertEquals(String.format(STATUS_STRING, 1, 0, 1), numbersService.getStatus());
+
+        // A catch up resends 7, and 8 arrives twice in one batch
+        numbersService.applyReplicated(new int[] {7, 8, 8}, 3);
+        assertEquals(2, numbersService.getUniqueTotal());
+        assertEquals(0, numbersService.getDuplicateTotal());
+        assertEquals(String.format(STATUS_STRING, 0, 0, 2), numbersService.getStatus());
+
+        // Client duplicates are still counted
+        numbersService.addNumber("000000008");
+        assertEquals(1, numbersService.getDuplicateTotal());
+    }
+
+    /**
+     * Verify the numbers log can be read from a number on, with the chunk listener told each chunk's end first.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadNumbersLogFromNumber() throws IOException {
+        numbersService.addNumbers(new int[] {5, 70000, 200000}, 3);
+
+        List<Integer> numbers = new ArrayList<>();
+        List<Integer> chunkEnds = new ArrayList<>();
+        int end = NumbersServiceRAFImpl.readNumbersLog(Paths.get(NUMBERS_LOG_FILE_NAME), 70000, numbers::add,
+                chunkEnd -> {
+                    // Each chunk holds one number, which isn't read until its chunk end is told
+                    assertEquals(chunkEnds.size(), numbers.size());
+                    chunkEnds.add(chunkEnd);
+                });
+        assertEquals(Arrays.asList(70000, 200000), numbers);
+        assertEquals(Arrays.asList(70000 + 65536, 70000 + 2 * 65536), chunkEnds);
+        assertEquals(200001, end);
+    }
+
     /**
      * Verify the number log is updated.
      *
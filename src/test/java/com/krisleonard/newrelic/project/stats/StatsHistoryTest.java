@@ -0,0 +1,90 @@
+package com.krisleonard.newrelic.project.stats;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.krisleonard.newrelic.project.stats.StatsHistory.Granularity.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The Unit test class for StatsHistory and StatsRing
+ */
+public class StatsHistoryTest {
+
+    /**
+     * Create totals where every count is the input value
+     *
+     * @param value The value of every count
+     * @return The totals
+     */
+    private static StatsTotals totals(long value) {
+        return new StatsTotals(value, value, value, value, value, value);
+    }
+
+    /**
+     * Verify one second intervals are recorded and rolled up into ten second and one minute intervals.
+     */
+    @Test
+    public void testRollUp() {
+        StatsHistory statsHistory = new StatsHistory(() -> totals(0));
+
+        // Baseline sample then 60 one second samples, each adding the sample number to every count
+        long total = 0;
+        statsHistory.sample(0, totals(total));
+        for (int second = 1; second <= 60; second++) {
+            total += second;
+            statsHistory.sample(second * 1000L, totals(total));
+        }
+
+        List<StatsInterval> seconds = statsHistory.getIntervals(ONE_SECOND, 1000);
+        assertEquals(60, seconds.size());
+        assertEquals(59000, seconds.get(59).getStartMillis());
+        assertEquals(60, seconds.get(59).getUniques());
+        assertEquals(60.0, seconds.get(59).getThroughput(), 0.001);
+
+        List<StatsInterval> tenSeconds = statsHistory.getIntervals(TEN_SECONDS, 1000);
+        assertEquals(6, tenSeconds.size());
+        assertEquals(0, tenSeconds.get(0).getStartMillis());
+        assertEquals(10000, tenSeconds.get(0).getDurationMillis());
+        assertEquals(55, tenSeconds.get(0).getLines());
+
+        List<StatsInterval> minutes = statsHistory.getIntervals(ONE_MINUTE, 1000);
+        assertEquals(1, minutes.size());
+        assertEquals(total, minutes.get(0).getDuplicates());
+        assertEquals(total, minutes.get(0).getOpenConnections());
+    }
+
+    /**
+     * Verify the ring keeps only the most recent intervals, oldest first.
+     */
+    @Test
+    public void testRingKeepsMostRecent() {
+        StatsRing statsRing = new StatsRing(3);
+        for (int i = 0; i < 5; i++) {
+            statsRing.add(new StatsInterval(i, 1, i, 0, 0, 0, 0, 0));
+        }
+
+        List<StatsInterval> latest = statsRing.latest(10);
+        assertEquals(3, latest.size());
+        assertEquals(2, latest.get(0).getUniques());
+        assertEquals(4, latest.get(2).getUniques());
+
+        latest = statsRing.latest(2);
+        assertEquals(2, latest.size());
+        assertEquals(3, latest.get(0).getUniques());
+    }
+
+    /**
+     * Verify asking the ring for no intervals or a negative count of intervals gets none.
+     */
+    @Test
+    public void testRingNonPositiveCount() {
+        StatsRing statsRing = new StatsRing(3);
+        statsRing.add(new StatsInterval(0, 1, 1, 0, 0, 0, 0, 0));
+
+        assertEquals(0, statsRing.latest(0).size());
+        assertEquals(0, statsRing.latest(-5).size());
+        assertEquals(1, statsRing.latest(1).size());
+    }
+}
@@ -0,0 +1,65 @@
+package com.krisleonard.newrelic.project.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.krisleonard.newrelic.project.service.NumbersService.MAX_NUMBER;
+import static org.junit.Assert.*;
+
+/**
+ * The Unit test class for ConcurrentBitSet
+ */
+public class ConcurrentBitSetTest {
+
+    /**
+     * Verify bits are set once, including at the ends of the range, and out of range bits read as not set.
+     */
+    @Test
+    public void testSetAndGet() {
+        ConcurrentBitSet bitSet = new ConcurrentBitSet(MAX_NUMBER);
+        assertFalse(bitSet.get(0));
+        assertTrue(bitSet.set(0));
+        assertFalse(bitSet.set(0));
+        assertTrue(bitSet.get(0));
+        assertFalse(bitSet.get(1));
+
+        assertTrue(bitSet.set(MAX_NUMBER));
+        assertTrue(bitSet.get(MAX_NUMBER));
+        assertFalse(bitSet.get(MAX_NUMBER - 1));
+        assertFalse(bitSet.get(-1));
+    }
+
+    /**
+     * Verify each bit is set by exactly one thread when threads race to set the same bits.
+     */
+    @Test
+    public void testConcurrentSet() throws InterruptedException {
+        ConcurrentBitSet bitSet = new ConcurrentBitSet(MAX_NUMBER);
+        int bitCount = 200000;
+        AtomicInteger setCount = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int bit = 0; bit < bitCount; bit++) {
+                    if (bitSet.set(bit * 4999)) {
+                        setCount.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(bitCount, setCount.get());
+        for (int bit = 0; bit < bitCount; bit++) {
+            assertTrue(bitSet.get(bit * 4999));
+        }
+    }
+}